@@ -1,8 +1,12 @@
 package ticket.booking;
 
+import ticket.booking.entities.BookingHistoryPage;
+import ticket.booking.entities.BookingHistoryQuery;
+import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
 import ticket.booking.services.UserBookingService;
+import ticket.booking.util.HashingOverloadedException;
 import ticket.booking.util.UserServiceUtil;
 
 import java.io.IOException;
@@ -54,10 +58,17 @@ public class App {
                     System.out.println("Enter the password to signup");
                     String passwordToSignUp = scanner.next();
 
+                    String hashedPassword;
+                    try {
+                        hashedPassword = UserServiceUtil.hashPassword(passwordToSignUp);
+                    } catch (HashingOverloadedException ex) {
+                        System.out.println("The system is busy right now, please try again.");
+                        break;
+                    }
                     User userToSignup = new User(
                             nameToSignUp,
                             passwordToSignUp,                               // plain (used only for current session)
-                            UserServiceUtil.hashPassword(passwordToSignUp), // stored hash
+                            hashedPassword,                                 // stored hash
                             new ArrayList<>(),
                             UUID.randomUUID().toString()
                     );
@@ -80,16 +91,48 @@ public class App {
                             ""                          // id not required for login lookup
                     );
                     try {
-                        userBookingService = new UserBookingService(userToLogin);
-                        System.out.println("Logged in (context set).");
+                        UserBookingService loginService = new UserBookingService(userToLogin);
+                        // verifies the password and upgrades the stored hash if its cost is outdated
+                        boolean loggedIn = loginService.loginUser();
+                        userBookingService = loginService;
+                        if (loggedIn) {
+                            System.out.println("Logged in (context set).");
+                        } else {
+                            System.out.println("Invalid username or password.");
+                        }
                     } catch (IOException ex) {
                         System.out.println("Login failed due to an error.");
+                    } catch (HashingOverloadedException ex) {
+                        System.out.println("The system is busy right now, please try again.");
                     }
                     break;
                 }
                 case 3: {
                     System.out.println("Fetching your bookings");
-                    userBookingService.fetchBookings();
+                    if (!userBookingService.hasSession()) {
+                        System.out.println("Not logged in.");
+                        break;
+                    }
+                    if (!userBookingService.isAuthenticated()) {
+                        System.out.println("No such user or wrong password.");
+                        break;
+                    }
+                    BookingHistoryQuery query = new BookingHistoryQuery(10);
+                    BookingHistoryPage page = userBookingService.fetchBookings(query);
+                    if (page.getTickets().isEmpty()) {
+                        System.out.println("No tickets booked yet.");
+                        break;
+                    }
+                    while (true) {
+                        for (Ticket ticket : page.getTickets()) {
+                            System.out.println(ticket.getTicketInfo());
+                        }
+                        if (!page.hasMore()) break;
+                        System.out.println("Type n for the next page, anything else to go back");
+                        if (!scanner.next().equalsIgnoreCase("n")) break;
+                        query.setCursor(page.getNextCursor());
+                        page = userBookingService.fetchBookings(query);
+                    }
                     break;
                 }
                 case 4: {
@@ -0,0 +1,24 @@
+package ticket.booking.entities;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BookingHistoryPage {
+
+    private final List<Ticket> tickets;
+    private final String nextCursor; // null on the last page
+
+    public BookingHistoryPage(List<Ticket> tickets, String nextCursor) {
+        this.tickets = tickets == null ? Collections.emptyList() : Collections.unmodifiableList(tickets);
+        this.nextCursor = nextCursor;
+    }
+
+    public static BookingHistoryPage empty() {
+        return new BookingHistoryPage(Collections.emptyList(), null);
+    }
+
+    public List<Ticket> getTickets() { return tickets; }
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean hasMore() { return nextCursor != null; }
+}
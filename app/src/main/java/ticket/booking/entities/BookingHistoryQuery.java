@@ -0,0 +1,51 @@
+package ticket.booking.entities;
+
+import java.time.LocalDateTime;
+
+public class BookingHistoryQuery {
+
+    public enum When { ALL, UPCOMING, PAST }
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private String cursor;          // nextCursor of the previous page, null for the first page
+    private LocalDateTime from;     // inclusive travel date bound
+    private LocalDateTime to;       // exclusive travel date bound
+    private String trainId;
+    private When when = When.ALL;
+    private boolean newestFirst;
+
+    public BookingHistoryQuery() {}
+
+    public BookingHistoryQuery(int pageSize) {
+        setPageSize(pageSize);
+    }
+
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        this.pageSize = pageSize;
+    }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public LocalDateTime getFrom() { return from; }
+    public void setFrom(LocalDateTime from) { this.from = from; }
+
+    public LocalDateTime getTo() { return to; }
+    public void setTo(LocalDateTime to) { this.to = to; }
+
+    public String getTrainId() { return trainId; }
+    public void setTrainId(String trainId) { this.trainId = trainId; }
+
+    public When getWhen() { return when; }
+    public void setWhen(When when) { this.when = when == null ? When.ALL : when; }
+
+    public boolean isNewestFirst() { return newestFirst; }
+    public void setNewestFirst(boolean newestFirst) { this.newestFirst = newestFirst; }
+}
@@ -9,13 +9,14 @@ import java.util.Map;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
-public class Train {
+public class Train implements Versioned {
 
     private String trainId;
     private int trainNo;
     private List<List<Integer>> seats;
     private Map<String, String> stationTimes;
     private List<String> stations;
+    private long version; // bumped on every committed write, see VersionedJsonStore
 
     public Train(){}
 
@@ -46,6 +47,11 @@ public class Train {
     public List<String> getStations(){ return stations; }
     public void setStations(List<String> stations){ this.stations = stations; }
 
+    @Override
+    public long getVersion(){ return version; }
+    @Override
+    public void setVersion(long version){ this.version = version; }
+
     public String getTrainInfo(){
         return String.format("Train ID: %s Train No: %s", trainId, trainNo);
     }
@@ -9,13 +9,14 @@ import java.util.List;
 
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class User {
+public class User implements Versioned {
 
     private String name;
     private String password;        // plain for current session/login only (not persisted)
     private String hashedPassword;  // persisted
     private List<Ticket> ticketsBooked;
     private String userId;
+    private long version;           // bumped on every committed write, see VersionedJsonStore
 
     public User(String name, String password, String hashedPassword, List<Ticket> ticketsBooked, String userId){
         this.name = name;
@@ -44,6 +45,11 @@ public class User {
     public void setTicketsBooked(List<Ticket> ticketsBooked) { this.ticketsBooked = ticketsBooked; }
     public void setUserId(String userId) { this.userId = userId; }
 
+    @Override
+    public long getVersion() { return version; }
+    @Override
+    public void setVersion(long version) { this.version = version; }
+
     public void addTicket(Ticket ticket) {
         if (ticketsBooked == null) {
             ticketsBooked = new ArrayList<>();
@@ -0,0 +1,9 @@
+package ticket.booking.entities;
+
+// Records stored through VersionedJsonStore; the version is bumped on every committed write.
+public interface Versioned {
+
+    long getVersion();
+
+    void setVersion(long version);
+}
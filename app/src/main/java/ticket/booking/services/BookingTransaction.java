@@ -0,0 +1,42 @@
+package ticket.booking.services;
+
+import ticket.booking.entities.Train;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Seats to book all-or-nothing for the logged-in user, see UserBookingService.bookTrainSeats.
+public class BookingTransaction {
+
+    public static class SeatClaim {
+        private final String trainId;
+        private final int row;
+        private final int col;
+
+        public SeatClaim(String trainId, int row, int col) {
+            this.trainId = trainId;
+            this.row = row;
+            this.col = col;
+        }
+
+        public String getTrainId() { return trainId; }
+        public int getRow() { return row; }
+        public int getCol() { return col; }
+    }
+
+    private final List<SeatClaim> claims = new ArrayList<>();
+
+    public BookingTransaction claimSeat(Train train, int row, int col) {
+        return claimSeat(train.getTrainId(), row, col);
+    }
+
+    public BookingTransaction claimSeat(String trainId, int row, int col) {
+        claims.add(new SeatClaim(trainId, row, col));
+        return this;
+    }
+
+    public List<SeatClaim> getClaims() { return Collections.unmodifiableList(claims); }
+
+    public boolean isEmpty() { return claims.isEmpty(); }
+}
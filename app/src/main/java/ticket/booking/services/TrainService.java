@@ -1,35 +1,27 @@
 package ticket.booking.services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import ticket.booking.entities.Train;
+import ticket.booking.util.LocalDb;
+import ticket.booking.util.TransactionJournal;
+import ticket.booking.util.VersionedJsonStore;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class TrainService {
 
     private List<Train> trainList = new ArrayList<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private static final String TRAIN_DB_PATH = "app/src/main/java/ticket/booking/localDb/trains.json";
+    private final VersionedJsonStore<Train> trainStore = LocalDb.trainStore();
 
     public TrainService() throws IOException {
-        File trainsFile = new File(TRAIN_DB_PATH);
-        if (!trainsFile.exists()) {
-            trainsFile.getParentFile().mkdirs();
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(trainsFile, new ArrayList<Train>());
-            trainList = new ArrayList<>();
-            return;
-        }
-        if (trainsFile.length() == 0) {
-            trainList = new ArrayList<>();
-            return;
-        }
-        trainList = objectMapper.readValue(trainsFile, new TypeReference<List<Train>>() {});
-        if (trainList == null) trainList = new ArrayList<>();
+        reload();
+    }
+
+    // Re-reads the shared store, e.g. after losing a version race to another process.
+    public void reload() throws IOException {
+        TransactionJournal.recoverIfPending();
+        trainList = trainStore.load();
     }
 
     /* ---------- queries ---------- */
@@ -69,38 +61,27 @@ public class TrainService {
 
     /* ---------- mutations ---------- */
 
-    public void addTrain(Train newTrain) {
+    // Writes fail with StaleEntityException if another writer changed the train since it was loaded.
+
+    public void addTrain(Train newTrain) throws IOException {
         // if train with same id exists, update instead of duplicate
         Train existing = getTrainById(newTrain.getTrainId());
         if (existing != null) {
+            // replaces the copy this service loaded; still rejected if someone changed it since
+            newTrain.setVersion(existing.getVersion());
             updateTrain(newTrain);
             return;
         }
-        trainList.add(newTrain);
-        saveTrainListToFile();
+        trainList = trainStore.commit(List.of(newTrain), List.of());
     }
 
-    public void updateTrain(Train updatedTrain) {
+    public void updateTrain(Train updatedTrain) throws IOException {
         if (updatedTrain == null || updatedTrain.getTrainId() == null) return;
 
-        OptionalInt idx = IntStream.range(0, trainList.size())
-                .filter(i -> updatedTrain.getTrainId().equalsIgnoreCase(trainList.get(i).getTrainId()))
-                .findFirst();
-
-        if (idx.isPresent()) {
-            trainList.set(idx.getAsInt(), updatedTrain);
+        if (getTrainById(updatedTrain.getTrainId()) == null) {
+            trainList = trainStore.commit(List.of(updatedTrain), List.of());
         } else {
-            trainList.add(updatedTrain);
-        }
-        saveTrainListToFile();
-    }
-
-    private void saveTrainListToFile() {
-        try {
-            objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValue(new File(TRAIN_DB_PATH), trainList);
-        } catch (IOException e) {
-            e.printStackTrace();
+            trainList = trainStore.commit(List.of(), List.of(updatedTrain));
         }
     }
 }
@@ -1,25 +1,48 @@
 package ticket.booking.services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.BookingHistoryPage;
+import ticket.booking.entities.BookingHistoryQuery;
 import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
+import ticket.booking.util.CommitNotAppliedException;
+import ticket.booking.util.HashingOverloadedException;
+import ticket.booking.util.LocalDb;
+import ticket.booking.util.PendingTransactionException;
+import ticket.booking.util.StaleEntityException;
+import ticket.booking.util.TicketHistoryIndex;
+import ticket.booking.util.TransactionJournal;
 import ticket.booking.util.UserServiceUtil;
+import ticket.booking.util.VersionedJsonStore;
 
-import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class UserBookingService {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     private List<User> userList = new ArrayList<>();
     private User user;
+    private volatile Boolean passwordMatched; // null until the session password has been checked once
+
+    // Booking history indexes by user name. userList is reloaded with fresh User objects on every
+    // book/cancel, so the indexes live here, tagged with the user version they reflect.
+    private final Map<String, CachedHistory> historyByUser = new HashMap<>();
+
+    private static final class CachedHistory {
+        long version;
+        final TicketHistoryIndex index;
+
+        CachedHistory(long version, TicketHistoryIndex index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
 
-    private static final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private final VersionedJsonStore<User> userStore = LocalDb.userStore();
+    private final TransactionJournal journal = new TransactionJournal();
 
     // ctor used after login attempt (App option 2)
     public UserBookingService(User user) throws IOException {
@@ -35,35 +58,134 @@ public class UserBookingService {
     /* ---------- persistence ---------- */
 
     private void loadUserListFromFile() throws IOException {
-        File usersFile = new File(USER_FILE_PATH);
-        if (!usersFile.exists()) {
-            usersFile.getParentFile().mkdirs();
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(usersFile, new ArrayList<User>());
-            userList = new ArrayList<>();
-            return;
+        TransactionJournal.recoverIfPending();
+        userList = userStore.load();
+    }
+
+    // Drops uncommitted in-memory changes after a failed write, and finishes a committed but unapplied one.
+    private void reloadAfterFailure() {
+        try {
+            loadUserListFromFile();
+        } catch (IOException ex) {
+            ex.printStackTrace();
         }
-        if (usersFile.length() == 0) {
-            userList = new ArrayList<>();
-            return;
+    }
+
+    private User findStoredUser(String name) {
+        return userList.stream()
+                .filter(u -> u.getName().equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    // The session's stored user, or null if unknown or the password is wrong. The password is hashed
+    // at most once per session, and not at all after loginUser, which records its outcome.
+    private User authenticatedUser() {
+        if (user == null) return null;
+        User storedUser = findStoredUser(user.getName());
+        if (storedUser == null) return null;
+        if (passwordMatched == null) {
+            passwordMatched = UserServiceUtil.checkPassword(user.getPassword(), storedUser.getHashedPassword());
+        }
+        if (!passwordMatched) return null;
+        return storedUser;
+    }
+
+    /* ---------- booking history index ---------- */
+
+    // Reuses the cached index while it matches the stored version, otherwise rebuilds it once.
+    private TicketHistoryIndex historyIndexOf(User storedUser) {
+        CachedHistory cached = historyByUser.get(storedUser.getName());
+        if (cached == null || cached.version != storedUser.getVersion()) {
+            cached = new CachedHistory(storedUser.getVersion(), new TicketHistoryIndex(storedUser.getTicketsBooked()));
+            historyByUser.put(storedUser.getName(), cached);
         }
-        userList = objectMapper.readValue(usersFile, new TypeReference<List<User>>() {});
-        if (userList == null) userList = new ArrayList<>();
+        return cached.index;
     }
 
-    private void saveUserListToFile() throws IOException {
-        File usersFile = new File(USER_FILE_PATH);
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(usersFile, userList);
+    // Moves a cached index across one of our own commits by applying just the tickets it changed.
+    // If someone else wrote the user in between, the index is dropped and rebuilt on the next read.
+    private void advanceHistory(User committedUser, List<Ticket> added, List<Ticket> removed) {
+        CachedHistory cached = historyByUser.get(committedUser.getName());
+        if (cached == null) return;
+        if (cached.version != committedUser.getVersion() - 1) {
+            historyByUser.remove(committedUser.getName());
+            return;
+        }
+        added.forEach(cached.index::add);
+        removed.forEach(cached.index::remove);
+        cached.version = committedUser.getVersion();
     }
 
     /* ---------- auth / users ---------- */
 
+    // Whether this service was created for a user (App option 2).
+    public boolean hasSession() {
+        return user != null;
+    }
+
+    // Whether that user exists and its password matched; only hashes if loginUser has not run.
+    public boolean isAuthenticated() {
+        return authenticatedUser() != null;
+    }
+
+    // Blocks until a hashing slot is free; throws HashingOverloadedException if none frees up in time.
     public Boolean loginUser() {
         if (user == null) return Boolean.FALSE;
-        Optional<User> foundUser = userList.stream()
-                .filter(u -> u.getName().equals(user.getName())
-                        && UserServiceUtil.checkPassword(user.getPassword(), u.getHashedPassword()))
-                .findFirst();
-        return foundUser.isPresent();
+        User storedUser = findStoredUser(user.getName());
+        if (storedUser == null) return Boolean.FALSE;
+        passwordMatched = UserServiceUtil.checkPassword(user.getPassword(), storedUser.getHashedPassword());
+        if (!passwordMatched) return Boolean.FALSE;
+
+        if (UserServiceUtil.needsRehash(storedUser.getHashedPassword())) {
+            try {
+                rehashUser(storedUser.getName(), UserServiceUtil.hashPassword(user.getPassword()));
+            } catch (HashingOverloadedException ex) {
+                // the login itself succeeded; the upgrade is retried on the next login
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    // Verifies on the hashing pool; hashes stored with a different cost are upgraded on success.
+    // Fails with HashingOverloadedException if the pool is full. The upgrade's store write runs on the
+    // common pool, so hashing threads never wait on file locks.
+    public CompletableFuture<Boolean> loginUserAsync() {
+        if (user == null) return CompletableFuture.completedFuture(Boolean.FALSE);
+        User storedUser = findStoredUser(user.getName());
+        if (storedUser == null) return CompletableFuture.completedFuture(Boolean.FALSE);
+
+        return UserServiceUtil.checkPasswordAsync(user.getPassword(), storedUser.getHashedPassword())
+                .thenCompose(matches -> {
+                    passwordMatched = matches;
+                    if (!matches || !UserServiceUtil.needsRehash(storedUser.getHashedPassword())) {
+                        return CompletableFuture.completedFuture(matches);
+                    }
+                    return UserServiceUtil.hashPasswordAsync(user.getPassword())
+                            .handleAsync((rehashed, error) -> {
+                                // an overloaded pool only postpones the upgrade, the login still succeeded
+                                if (error == null) rehashUser(storedUser.getName(), rehashed);
+                                return Boolean.TRUE;
+                            });
+                });
+    }
+
+    // Writes the upgraded hash through a fresh copy of the user and leaves this service's fields alone,
+    // so it is safe off the caller's thread. userList keeps the old hash, which still verifies.
+    private void rehashUser(String name, String rehashed) {
+        try {
+            User freshUser = userStore.load().stream()
+                    .filter(u -> u.getName().equals(name))
+                    .findFirst()
+                    .orElse(null);
+            if (freshUser == null) return;
+            freshUser.setHashedPassword(rehashed);
+            userStore.commit(List.of(), List.of(freshUser));
+        } catch (StaleEntityException ex) {
+            // another process updated the user first; the old hash still verifies, so the upgrade happens next login
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
     }
 
     public Boolean signUp(User user1) {
@@ -74,9 +196,21 @@ public class UserBookingService {
                 System.out.println("Username already exists.");
                 return Boolean.FALSE;
             }
-            userList.add(user1);
-            saveUserListToFile();
+            // the insert itself fails if another process registered the name meanwhile
+            try {
+                userList = userStore.commit(List.of(user1), List.of());
+            } catch (PendingTransactionException ex) {
+                // a crashed booking left its journal behind; finish it, then insert again
+                loadUserListFromFile();
+                userList = userStore.commit(List.of(user1), List.of());
+            }
             return Boolean.TRUE;
+        } catch (PendingTransactionException ex) {
+            System.out.println("Sign up could not be completed, please try again.");
+            return Boolean.FALSE;
+        } catch (StaleEntityException ex) {
+            System.out.println("Username already exists.");
+            return Boolean.FALSE;
         } catch (IOException ex) {
             ex.printStackTrace();
             return Boolean.FALSE;
@@ -88,17 +222,22 @@ public class UserBookingService {
             System.out.println("Not logged in.");
             return;
         }
-        Optional<User> userFetched = userList.stream()
-                .filter(u -> u.getName().equals(user.getName())
-                        && UserServiceUtil.checkPassword(user.getPassword(), u.getHashedPassword()))
-                .findFirst();
-        if (userFetched.isPresent()) {
-            userFetched.get().printTickets();
+        User storedUser = authenticatedUser();
+        if (storedUser != null) {
+            storedUser.printTickets();
         } else {
             System.out.println("No such user or wrong password.");
         }
     }
 
+    // One page of the logged-in user's tickets, ordered by travel date; pass page.getNextCursor() back for the next page.
+    public BookingHistoryPage fetchBookings(BookingHistoryQuery query) {
+        if (query == null) return BookingHistoryPage.empty();
+        User storedUser = authenticatedUser();
+        if (storedUser == null) return BookingHistoryPage.empty();
+        return historyIndexOf(storedUser).page(query, LocalDateTime.now());
+    }
+
     /* ---------- trains / search ---------- */
 
     public List<Train> getTrains(String source, String destination) {
@@ -126,70 +265,109 @@ public class UserBookingService {
     /* ---------- booking / cancel ---------- */
 
     public Boolean bookTrainSeat(Train selectedTrain, int row, int seat) {
-        try {
-            TrainService trainService = new TrainService();
-
-            // Always operate on authoritative train from DB, not the selected copy
-            Train train = trainService.getTrainById(selectedTrain.getTrainId());
-            if (train == null) {
-                System.out.println("Train not found.");
-                return Boolean.FALSE;
-            }
-
-            List<List<Integer>> seats = train.getSeats();
-            // bounds
-            if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()) {
-                System.out.println("Invalid seat selection.");
-                return Boolean.FALSE;
-            }
-            // already booked?
-            if (seats.get(row).get(seat) == 1) {
-                System.out.println("Seat already booked.");
-                return Boolean.FALSE;
-            }
-
-            // mark booked
-            seats.get(row).set(seat, 1);
-            train.setSeats(seats);
-            // persist train
-            trainService.updateTrain(train);
-
-            // find current user
-            Optional<User> userFetched = userList.stream()
-                    .filter(u -> u.getName().equals(user.getName())
-                            && UserServiceUtil.checkPassword(user.getPassword(), u.getHashedPassword()))
-                    .findFirst();
-            if (userFetched.isEmpty()) {
-                System.out.println("User not found.");
-                return Boolean.FALSE;
-            }
-            User currentUser = userFetched.get();
-
-            // date string same as before
-            String travelDateStr = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-
-            // build ticket (snapshot with row/col, plus train info)
-            Ticket ticket = new Ticket(
-                    UUID.randomUUID().toString(),
-                    currentUser.getUserId(),
-                    train.getStations().get(0),
-                    train.getStations().get(train.getStations().size() - 1),
-                    travelDateStr,
-                    train,
-                    row,
-                    seat
-            );
-
-            currentUser.addTicket(ticket);
-            saveUserListToFile();
+        List<Ticket> booked = bookTrainSeats(new BookingTransaction().claimSeat(selectedTrain, row, seat));
+        return booked.isEmpty() ? Boolean.FALSE : Boolean.TRUE;
+    }
 
-            System.out.println("Booking successful. Ticket ID: " + ticket.getTicketId());
-            return Boolean.TRUE;
+    /**
+     * Claims every seat in the transaction and adds the matching tickets to the logged-in user
+     * in one journaled commit: either all of them are booked or none is.
+     *
+     * @return the booked tickets, or an empty list if nothing was booked
+     */
+    public List<Ticket> bookTrainSeats(BookingTransaction transaction) {
+        if (transaction == null || transaction.isEmpty()) return Collections.emptyList();
+
+        // find current user before claiming anything
+        User authenticated = authenticatedUser();
+        if (authenticated == null) {
+            System.out.println("User not found.");
+            return Collections.emptyList();
+        }
+        String userName = authenticated.getName();
 
+        List<Ticket> committing = new ArrayList<>(); // tickets of the attempt being committed
+        try {
+            // prepared on fresh copies without any lock; a lost version race at commit re-runs it
+            List<Ticket> booked = VersionedJsonStore.retryOnConflict(() -> {
+                committing.clear();
+                // Always operate on authoritative trains from DB, not the selected copies
+                TrainService trainService = new TrainService();
+                loadUserListFromFile();
+                User currentUser = findStoredUser(userName);
+                if (currentUser == null) {
+                    System.out.println("User not found.");
+                    return null;
+                }
+
+                // date string same as before
+                String travelDateStr = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+
+                Map<String, Train> claimedTrains = new LinkedHashMap<>();
+                List<Ticket> tickets = new ArrayList<>();
+                for (BookingTransaction.SeatClaim claim : transaction.getClaims()) {
+                    Train train = trainService.getTrainById(claim.getTrainId());
+                    if (train == null) {
+                        System.out.println("Train not found: " + claim.getTrainId());
+                        return null;
+                    }
+
+                    int row = claim.getRow();
+                    int seat = claim.getCol();
+                    List<List<Integer>> seats = train.getSeats();
+                    // bounds
+                    if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()) {
+                        System.out.println("Invalid seat selection on train " + train.getTrainId() + ".");
+                        return null;
+                    }
+                    // already booked (by someone else, or earlier in this transaction)?
+                    if (seats.get(row).get(seat) == 1) {
+                        System.out.println("Seat " + row + "," + seat + " on train " + train.getTrainId() + " already booked.");
+                        return null;
+                    }
+
+                    // mark booked
+                    seats.get(row).set(seat, 1);
+                    claimedTrains.put(train.getTrainId().toLowerCase(Locale.ROOT), train);
+
+                    // build ticket (snapshot with row/col, plus train info)
+                    tickets.add(new Ticket(
+                            UUID.randomUUID().toString(),
+                            currentUser.getUserId(),
+                            train.getStations().get(0),
+                            train.getStations().get(train.getStations().size() - 1),
+                            travelDateStr,
+                            train,
+                            row,
+                            seat
+                    ));
+                }
+
+                tickets.forEach(currentUser::addTicket);
+                committing.addAll(tickets);
+                userList = journal.commit(claimedTrains.values(), List.of(currentUser));
+                advanceHistory(currentUser, tickets, List.of());
+                return tickets;
+            });
+            if (booked == null) return Collections.emptyList();
+            return printBooked(booked);
+
+        } catch (CommitNotAppliedException ex) {
+            // the seats are booked; reporting a failure here would make the caller book them twice
+            reloadAfterFailure();
+            return printBooked(committing);
         } catch (IOException ex) {
             ex.printStackTrace();
-            return Boolean.FALSE;
+            reloadAfterFailure();
+            return Collections.emptyList();
+        }
+    }
+
+    private List<Ticket> printBooked(List<Ticket> booked) {
+        for (Ticket ticket : booked) {
+            System.out.println("Booking successful. Ticket ID: " + ticket.getTicketId());
         }
+        return booked;
     }
 
     public Boolean cancelBooking(String ticketId) {
@@ -199,57 +377,68 @@ public class UserBookingService {
         }
 
         // find logged-in user
-        Optional<User> userFetched = userList.stream()
-                .filter(u -> u.getName().equals(user.getName())
-                        && UserServiceUtil.checkPassword(user.getPassword(), u.getHashedPassword()))
-                .findFirst();
-
-        if (userFetched.isEmpty()) {
+        User authenticated = authenticatedUser();
+        if (authenticated == null) {
             System.out.println("User not found.");
             return Boolean.FALSE;
         }
-        User currentUser = userFetched.get();
-
-        // find the ticket (do not mutate while iterating)
-        Ticket ticketToCancel = currentUser.getTicketsBooked().stream()
-                .filter(t -> t.getTicketId().equals(ticketId))
-                .findFirst()
-                .orElse(null);
-
-        if (ticketToCancel == null) {
-            System.out.println("No ticket found with ID " + ticketId);
-            return Boolean.FALSE;
-        }
+        String userName = authenticated.getName();
 
         try {
-            // Always load the authoritative train from DB (avoid stale snapshot in ticket)
-            TrainService trainService = new TrainService();
-            Train train = trainService.getTrainById(ticketToCancel.getTrain().getTrainId());
-
-            if (train == null) {
-                System.out.println("Associated train not found.");
-                return Boolean.FALSE;
-            }
-
-            // bounds safety
-            int r = ticketToCancel.getRow();
-            int c = ticketToCancel.getCol();
-            List<List<Integer>> seats = train.getSeats();
-            if (r >= 0 && r < seats.size() && c >= 0 && c < seats.get(r).size()) {
-                seats.get(r).set(c, 0); // free the seat
-                train.setSeats(seats);
-                trainService.updateTrain(train);
-            }
-
-            // remove ticket from user and persist
-            currentUser.removeTicket(ticketToCancel);
-            saveUserListToFile();
-
+            // removing the ticket and freeing the seat commit together, so neither can happen alone
+            return VersionedJsonStore.retryOnConflict(() -> {
+                TrainService trainService = new TrainService();
+                loadUserListFromFile();
+                User currentUser = findStoredUser(userName);
+                if (currentUser == null) {
+                    System.out.println("User not found.");
+                    return Boolean.FALSE;
+                }
+
+                // find the ticket (do not mutate while iterating)
+                Ticket ticketToCancel = currentUser.getTicketsBooked().stream()
+                        .filter(t -> t.getTicketId().equals(ticketId))
+                        .findFirst()
+                        .orElse(null);
+
+                if (ticketToCancel == null) {
+                    System.out.println("No ticket found with ID " + ticketId);
+                    return Boolean.FALSE;
+                }
+
+                // Always load the authoritative train from DB (avoid stale snapshot in ticket)
+                Train train = trainService.getTrainById(ticketToCancel.getTrain().getTrainId());
+                if (train == null) {
+                    System.out.println("Associated train not found.");
+                    return Boolean.FALSE;
+                }
+
+                // bounds safety
+                List<Train> trainUpdates = new ArrayList<>();
+                int r = ticketToCancel.getRow();
+                int c = ticketToCancel.getCol();
+                List<List<Integer>> seats = train.getSeats();
+                if (r >= 0 && r < seats.size() && c >= 0 && c < seats.get(r).size()) {
+                    seats.get(r).set(c, 0); // free the seat
+                    trainUpdates.add(train);
+                }
+
+                currentUser.removeTicket(ticketToCancel);
+                userList = journal.commit(trainUpdates, List.of(currentUser));
+                advanceHistory(currentUser, List.of(), List.of(ticketToCancel));
+
+                System.out.println("Ticket with ID " + ticketId + " has been canceled.");
+                return Boolean.TRUE;
+            });
+
+        } catch (CommitNotAppliedException e) {
+            // the cancellation is committed and finishes with the recovery below
+            reloadAfterFailure();
             System.out.println("Ticket with ID " + ticketId + " has been canceled.");
             return Boolean.TRUE;
-
         } catch (IOException e) {
             e.printStackTrace();
+            reloadAfterFailure();
             return Boolean.FALSE;
         }
     }
@@ -0,0 +1,12 @@
+package ticket.booking.util;
+
+import java.io.IOException;
+
+// A transaction reached its journal, so it is committed, but writing it into the stores failed.
+// Recovery (TransactionJournal.recoverIfPending) finishes it; callers must report success, not retry.
+public class CommitNotAppliedException extends IOException {
+
+    public CommitNotAppliedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,9 @@
+package ticket.booking.util;
+
+// The password hashing pool stayed full for longer than callers are willing to wait; try again later.
+public class HashingOverloadedException extends RuntimeException {
+
+    public HashingOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,45 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+public class LocalDb {
+
+    // Override with -Dticket.booking.db.dir=/shared/localDb to point several processes at one store.
+    public static final String DB_DIR_PROPERTY = "ticket.booking.db.dir";
+    public static final String DEFAULT_DB_DIR = "app/src/main/java/ticket/booking/localDb";
+    public static final String JOURNAL_FILE_NAME = "transaction.json";
+
+    public static File dir() {
+        return new File(System.getProperty(DB_DIR_PROPERTY, DEFAULT_DB_DIR));
+    }
+
+    public static File trainsFile() { return new File(dir(), "trains.json"); }
+
+    public static File usersFile() { return new File(dir(), "users.json"); }
+
+    public static File journalFile() { return new File(dir(), JOURNAL_FILE_NAME); }
+
+    /* ---------- stores ---------- */
+
+    // trains are matched case-insensitively by id, as in TrainService.getTrainById
+    public static VersionedJsonStore<Train> trainStore() {
+        return new VersionedJsonStore<>(
+                trainsFile(),
+                new TypeReference<List<Train>>() {},
+                t -> t.getTrainId() == null ? "" : t.getTrainId().toLowerCase(Locale.ROOT));
+    }
+
+    // usernames are unique, and every lookup goes by name
+    public static VersionedJsonStore<User> userStore() {
+        return new VersionedJsonStore<>(
+                usersFile(),
+                new TypeReference<List<User>>() {},
+                User::getName);
+    }
+}
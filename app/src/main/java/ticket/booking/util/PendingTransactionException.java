@@ -0,0 +1,10 @@
+package ticket.booking.util;
+
+// A single-store commit found a multi-store transaction's journal still waiting to be rolled forward.
+// It is a StaleEntityException so retryOnConflict reloads (which recovers the journal) and tries again.
+public class PendingTransactionException extends StaleEntityException {
+
+    public PendingTransactionException(String message) {
+        super(message);
+    }
+}
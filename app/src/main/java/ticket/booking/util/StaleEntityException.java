@@ -0,0 +1,11 @@
+package ticket.booking.util;
+
+import java.io.IOException;
+
+// Thrown when a commit finds that another writer changed a record since it was read.
+public class StaleEntityException extends IOException {
+
+    public StaleEntityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,140 @@
+package ticket.booking.util;
+
+import ticket.booking.entities.BookingHistoryPage;
+import ticket.booking.entities.BookingHistoryQuery;
+import ticket.booking.entities.Ticket;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Per-user view of booked tickets sorted by travel date, so one page of history
+ * costs a tree lookup plus the page itself regardless of how many tickets exist.
+ *
+ * Keys are "dateOfTravel \0 ticketId"; travel dates use the "yyyy-MM-dd HH:mm:ss"
+ * persistence format, which sorts the same lexicographically and chronologically.
+ */
+public class TicketHistoryIndex {
+
+    public static final DateTimeFormatter TRAVEL_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final NavigableMap<String, Ticket> byDate = new TreeMap<>();
+    private final Map<String, NavigableMap<String, Ticket>> byTrain = new HashMap<>();
+
+    public TicketHistoryIndex(Collection<Ticket> tickets) {
+        if (tickets != null) {
+            tickets.forEach(this::add);
+        }
+    }
+
+    public void add(Ticket ticket) {
+        if (ticket == null) return;
+        String key = keyOf(ticket);
+        byDate.put(key, ticket);
+        String trainId = trainIdOf(ticket);
+        if (trainId != null) {
+            byTrain.computeIfAbsent(trainId, id -> new TreeMap<>()).put(key, ticket);
+        }
+    }
+
+    public void remove(Ticket ticket) {
+        if (ticket == null) return;
+        String key = keyOf(ticket);
+        byDate.remove(key);
+        String trainId = trainIdOf(ticket);
+        if (trainId != null) {
+            NavigableMap<String, Ticket> trainTickets = byTrain.get(trainId);
+            if (trainTickets != null) {
+                trainTickets.remove(key);
+                if (trainTickets.isEmpty()) byTrain.remove(trainId);
+            }
+        }
+    }
+
+    public int size() { return byDate.size(); }
+
+    /* ---------- paging ---------- */
+
+    public BookingHistoryPage page(BookingHistoryQuery query, LocalDateTime now) {
+        NavigableMap<String, Ticket> source = byDate;
+        if (query.getTrainId() != null) {
+            source = byTrain.getOrDefault(query.getTrainId().toLowerCase(Locale.ROOT), Collections.emptyNavigableMap());
+        }
+
+        LocalDateTime from = query.getFrom();
+        LocalDateTime to = query.getTo();
+        if (query.getWhen() == BookingHistoryQuery.When.UPCOMING) {
+            from = from == null || from.isBefore(now) ? now : from;
+        } else if (query.getWhen() == BookingHistoryQuery.When.PAST) {
+            to = to == null || to.isAfter(now) ? now : to;
+        }
+        // keys for a date start with the formatted date, so the bare date sorts before any ticket on it
+        String low = from == null ? null : from.format(TRAVEL_DATE_FORMAT);
+        boolean lowInclusive = true;
+        String high = to == null ? null : to.format(TRAVEL_DATE_FORMAT);
+
+        // the cursor narrows the range from the side we are paging away from
+        String cursorKey = decodeCursor(query.getCursor());
+        if (cursorKey != null) {
+            if (query.isNewestFirst()) {
+                if (high == null || cursorKey.compareTo(high) < 0) high = cursorKey;
+            } else if (low == null || cursorKey.compareTo(low) >= 0) {
+                low = cursorKey;
+                lowInclusive = false;
+            }
+        }
+
+        NavigableMap<String, Ticket> range = source;
+        if (low != null && high != null) {
+            if (low.compareTo(high) >= 0) return BookingHistoryPage.empty();
+            range = range.subMap(low, lowInclusive, high, false);
+        } else if (low != null) {
+            range = range.tailMap(low, lowInclusive);
+        } else if (high != null) {
+            range = range.headMap(high, false);
+        }
+        if (query.isNewestFirst()) range = range.descendingMap();
+
+        List<Ticket> tickets = new ArrayList<>(query.getPageSize());
+        String lastKey = null;
+        boolean hasMore = false;
+        for (Map.Entry<String, Ticket> entry : range.entrySet()) {
+            if (tickets.size() == query.getPageSize()) {
+                hasMore = true;
+                break;
+            }
+            tickets.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+        return new BookingHistoryPage(tickets, hasMore ? encodeCursor(lastKey) : null);
+    }
+
+    /* ---------- keys / cursors ---------- */
+
+    private static String keyOf(Ticket ticket) {
+        String date = ticket.getDateOfTravel() == null ? "" : ticket.getDateOfTravel();
+        String id = ticket.getTicketId() == null ? "" : ticket.getTicketId();
+        return date + KEY_SEPARATOR + id;
+    }
+
+    private static String trainIdOf(Ticket ticket) {
+        if (ticket.getTrain() == null || ticket.getTrain().getTrainId() == null) return null;
+        return ticket.getTrain().getTrainId().toLowerCase(Locale.ROOT);
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid booking history cursor: " + cursor, ex);
+        }
+    }
+}
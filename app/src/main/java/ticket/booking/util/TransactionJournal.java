@@ -0,0 +1,124 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Commits changes to trains.json and users.json as one unit.
+ *
+ * Under the train lock and then the user lock (always in that order), the versions of every
+ * touched record are validated and the post-commit images are written to a single journal
+ * file. Once that file and its directory entry are durable the transaction is committed: both stores are rewritten
+ * and the journal is deleted. A crash in between leaves the journal behind, and the next
+ * {@link #recoverIfPending()} rolls it forward. Nothing is locked while a transaction is
+ * being prepared, so bookings on unrelated trains only meet at this short commit.
+ */
+public class TransactionJournal {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public static class Entry {
+        private List<Train> trains = new ArrayList<>();
+        private List<User> users = new ArrayList<>();
+
+        public Entry() {}
+
+        public Entry(List<Train> trains, List<User> users) {
+            this.trains = trains;
+            this.users = users;
+        }
+
+        public List<Train> getTrains() { return trains; }
+        public void setTrains(List<Train> trains) { this.trains = trains; }
+
+        public List<User> getUsers() { return users; }
+        public void setUsers(List<User> users) { this.users = users; }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final VersionedJsonStore<Train> trainStore = LocalDb.trainStore();
+    private final VersionedJsonStore<User> userStore = LocalDb.userStore();
+    private final Path journalFile = LocalDb.journalFile().toPath().toAbsolutePath().normalize();
+
+    /**
+     * Atomically writes the given trains and users, each of which must still carry the version
+     * it was read with. Fails with {@link StaleEntityException} (nothing written) otherwise, and
+     * with {@link CommitNotAppliedException} if the transaction committed but a store write failed.
+     *
+     * @return the user list as stored after the commit
+     */
+    public List<User> commit(Collection<Train> trainUpdates, Collection<User> userUpdates) throws IOException {
+        return trainStore.withCommitLock(() -> userStore.withCommitLock(() -> {
+            rollForward();
+
+            List<Train> trains = trainStore.read();
+            List<User> users = userStore.read();
+            Map<Train, Long> trainVersions = trainStore.apply(trains, List.of(), trainUpdates);
+            Map<User, Long> userVersions;
+            try {
+                userVersions = userStore.apply(users, List.of(), userUpdates);
+            } catch (StaleEntityException ex) {
+                VersionedJsonStore.revert(trainVersions);
+                throw ex;
+            }
+
+            try {
+                VersionedJsonStore.writeAtomically(objectMapper, journalFile,
+                        new Entry(new ArrayList<>(trainUpdates), new ArrayList<>(userUpdates)));
+            } catch (IOException ex) {
+                // not committed: hand the caller back its records as they were
+                VersionedJsonStore.revert(trainVersions);
+                VersionedJsonStore.revert(userVersions);
+                throw ex;
+            }
+
+            // committed; from here on a failure is repaired by recovery rather than rolled back.
+            // Each write forces the directory after its rename, so both stores are on disk before
+            // the journal's deletion can be.
+            try {
+                trainStore.write(trains);
+                userStore.write(users);
+                Files.delete(journalFile);
+                VersionedJsonStore.syncDirectory(journalFile.getParent());
+            } catch (IOException ex) {
+                throw new CommitNotAppliedException("Transaction committed but not yet applied; it completes on the next load", ex);
+            }
+            return users;
+        }));
+    }
+
+    // Cheap when there is nothing to do: only takes the locks if a journal file is present.
+    public static void recoverIfPending() throws IOException {
+        if (!Files.exists(LocalDb.journalFile().toPath())) return;
+        TransactionJournal journal = new TransactionJournal();
+        journal.trainStore.withCommitLock(() -> journal.userStore.withCommitLock(() -> {
+            journal.rollForward();
+            return null;
+        }));
+    }
+
+    // Must hold both commit locks.
+    private void rollForward() throws IOException {
+        if (!Files.exists(journalFile)) return;
+        Entry entry = objectMapper.readValue(journalFile.toFile(), Entry.class);
+
+        List<Train> trains = trainStore.read();
+        if (trainStore.replay(trains, entry.getTrains())) trainStore.write(trains);
+        List<User> users = userStore.read();
+        if (userStore.replay(users, entry.getUsers())) userStore.write(users);
+        Files.delete(journalFile);
+        VersionedJsonStore.syncDirectory(journalFile.getParent());
+    }
+}
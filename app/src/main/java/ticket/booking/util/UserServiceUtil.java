@@ -2,14 +2,166 @@ package ticket.booking.util;
 
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 public class UserServiceUtil {
 
+    // BCrypt work factor (log2 rounds); override with -Dticket.booking.bcrypt.cost=12
+    public static final int DEFAULT_BCRYPT_COST = 10;
+    private static final int MIN_BCRYPT_COST = 4;
+    private static final int MAX_BCRYPT_COST = 30; // jBCrypt rejects more than 30 log rounds
+
+    private static volatile int bcryptCost =
+            validCost(Integer.getInteger("ticket.booking.bcrypt.cost", DEFAULT_BCRYPT_COST));
+
+    // Hashing is CPU bound, so it runs on a small dedicated pool instead of the caller's thread.
+    // Admission is capped by a semaphore sized to the pool plus its bounded queue: the async API
+    // fails fast when it is exhausted, the blocking API waits up to HASH_WAIT_MILLIS for a slot.
+    private static final int HASH_THREADS =
+            Integer.getInteger("ticket.booking.bcrypt.threads", Runtime.getRuntime().availableProcessors());
+    private static final int HASH_QUEUE_CAPACITY =
+            Integer.getInteger("ticket.booking.bcrypt.queue", 256);
+    private static final long HASH_WAIT_MILLIS =
+            Long.getLong("ticket.booking.bcrypt.wait.ms", 5000);
+
+    private static final ExecutorService HASH_EXECUTOR = newHashExecutor();
+    private static final Semaphore HASH_PERMITS = new Semaphore(HASH_THREADS + HASH_QUEUE_CAPACITY);
+
+    private static ExecutorService newHashExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                HASH_THREADS, HASH_THREADS,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(HASH_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread t = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /* ---------- configuration ---------- */
+
+    public static int getBcryptCost() { return bcryptCost; }
+
+    public static void setBcryptCost(int cost) { bcryptCost = validCost(cost); }
+
+    public static int getHashThreads() { return HASH_THREADS; }
+
+    static int availableHashPermits() { return HASH_PERMITS.availablePermits(); }
+
+    private static int validCost(int cost) {
+        if (cost < MIN_BCRYPT_COST || cost > MAX_BCRYPT_COST) {
+            throw new IllegalArgumentException(
+                    "BCrypt cost must be between " + MIN_BCRYPT_COST + " and " + MAX_BCRYPT_COST + ", got " + cost);
+        }
+        return cost;
+    }
+
+    /* ---------- async API ---------- */
+
+    // Both fail with HashingOverloadedException right away if the pool has no free slot.
+
+    public static CompletableFuture<String> hashPasswordAsync(String plainPassword) {
+        return hashPasswordAsync(plainPassword, 0);
+    }
+
+    public static CompletableFuture<Boolean> checkPasswordAsync(String plainPassword, String hashedPassword) {
+        return checkPasswordAsync(plainPassword, hashedPassword, 0);
+    }
+
+    private static CompletableFuture<String> hashPasswordAsync(String plainPassword, long waitMillis) {
+        int cost = bcryptCost;
+        return submit(() -> BCrypt.hashpw(plainPassword, BCrypt.gensalt(cost)), waitMillis);
+    }
+
+    private static CompletableFuture<Boolean> checkPasswordAsync(String plainPassword, String hashedPassword, long waitMillis) {
+        if (plainPassword == null || hashedPassword == null || hashedPassword.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return submit(() -> {
+            try {
+                return BCrypt.checkpw(plainPassword, hashedPassword);
+            } catch (IllegalArgumentException ex) {
+                // malformed stored hash
+                return false;
+            }
+        }, waitMillis);
+    }
+
+    static <T> CompletableFuture<T> submit(Supplier<T> task, long waitMillis) {
+        boolean admitted;
+        try {
+            admitted = HASH_PERMITS.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            return CompletableFuture.failedFuture(
+                    new HashingOverloadedException("Password hashing is overloaded, please try again"));
+        }
+        try {
+            // never rejected: permits never exceed threads + queue capacity
+            return CompletableFuture.supplyAsync(task, HASH_EXECUTOR)
+                    .whenComplete((result, error) -> HASH_PERMITS.release());
+        } catch (RejectedExecutionException ex) {
+            HASH_PERMITS.release();
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /* ---------- blocking API (waits for a slot on the hashing pool, then for the result) ---------- */
+
+    // Throw HashingOverloadedException if no slot frees up within ticket.booking.bcrypt.wait.ms.
+
     public static String hashPassword(String plainPassword) {
-        return BCrypt.hashpw(plainPassword, BCrypt.gensalt());
+        return join(hashPasswordAsync(plainPassword, HASH_WAIT_MILLIS));
     }
 
     public static boolean checkPassword(String plainPassword, String hashedPassword) {
-        if (plainPassword == null || hashedPassword == null) return false;
-        return BCrypt.checkpw(plainPassword, hashedPassword);
+        return join(checkPasswordAsync(plainPassword, hashedPassword, HASH_WAIT_MILLIS));
+    }
+
+    // Waits for a hashing future, rethrowing its unchecked failure (e.g. HashingOverloadedException) unwrapped.
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw ex;
+        }
+    }
+
+    /* ---------- cost migration ---------- */
+
+    // Reads the work factor out of a "$2a$10$..." hash, or -1 if it is not a BCrypt hash.
+    public static int costOf(String hashedPassword) {
+        if (hashedPassword == null || hashedPassword.length() < 7 || hashedPassword.charAt(0) != '$') return -1;
+        int costStart = hashedPassword.indexOf('$', 1) + 1;
+        if (costStart <= 0 || costStart + 2 >= hashedPassword.length() || hashedPassword.charAt(costStart + 2) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hashedPassword.substring(costStart, costStart + 2));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public static boolean needsRehash(String hashedPassword) {
+        return costOf(hashedPassword) != bcryptCost;
     }
 }
@@ -0,0 +1,234 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Versioned;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A JSON list file shared by several processes, written with optimistic concurrency.
+ *
+ * Reads take no lock: every commit replaces the file with an atomic rename, so a reader
+ * always sees a complete list. A commit takes an exclusive {@link FileChannel#lock()} on a
+ * sidecar ".lock" file, re-reads the list, checks that every updated record still has the
+ * version the caller read, then writes the merged list and bumps those versions. A version
+ * mismatch raises {@link StaleEntityException}; callers reload and retry via {@link #retryOnConflict}.
+ *
+ * Writes spanning several stores go through {@link TransactionJournal}; while its journal file
+ * exists, single-store commits fail with {@link PendingTransactionException} until the journal
+ * has been rolled forward.
+ */
+public class VersionedJsonStore<T extends Versioned> {
+
+    public static final int MAX_ATTEMPTS = 8;
+
+    // FileChannel.lock is held per JVM, so threads of one process also queue on an in-process lock.
+    private static final Map<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+    private final Path lockFile;
+    private final Path journalFile;
+    private final TypeReference<List<T>> listType;
+    private final Function<T, String> keyOf;
+
+    public VersionedJsonStore(File file, TypeReference<List<T>> listType, Function<T, String> keyOf) {
+        this.file = file.toPath().toAbsolutePath().normalize();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.journalFile = this.file.resolveSibling(LocalDb.JOURNAL_FILE_NAME);
+        this.listType = listType;
+        this.keyOf = keyOf;
+    }
+
+    public interface Attempt<R> {
+        R run() throws IOException;
+    }
+
+    // Runs the attempt again (after a short random backoff) each time it loses a version race.
+    public static <R> R retryOnConflict(Attempt<R> attempt) throws IOException {
+        for (int i = 1; ; i++) {
+            try {
+                return attempt.run();
+            } catch (StaleEntityException ex) {
+                if (i >= MAX_ATTEMPTS) throw ex;
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L << Math.min(i, 6)));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /* ---------- reads ---------- */
+
+    public List<T> load() throws IOException {
+        if (!Files.exists(file)) {
+            Files.createDirectories(file.getParent());
+            withCommitLock(() -> {
+                if (!Files.exists(file)) write(new ArrayList<>());
+                return null;
+            });
+        }
+        return read();
+    }
+
+    List<T> read() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return new ArrayList<>();
+        List<T> list = objectMapper.readValue(file.toFile(), listType);
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    /* ---------- writes ---------- */
+
+    /**
+     * Inserts records that must not exist yet and updates records that must still carry the
+     * version they were read with. Either every record is written or none is.
+     *
+     * @return the stored list after the commit, containing the passed (re-versioned) instances
+     */
+    public List<T> commit(Collection<T> inserts, Collection<T> updates) throws IOException {
+        return withCommitLock(() -> {
+            if (Files.exists(journalFile)) {
+                // a multi-store transaction is waiting to be rolled forward; the retry's reload recovers it
+                throw new PendingTransactionException("A pending transaction must be recovered first");
+            }
+            List<T> current = read();
+            Map<T, Long> previousVersions = apply(current, inserts, updates);
+            try {
+                write(current);
+            } catch (IOException ex) {
+                revert(previousVersions);
+                throw ex;
+            }
+            return current;
+        });
+    }
+
+    /* ---------- building blocks for TransactionJournal (call under withCommitLock) ---------- */
+
+    // Validates versions, then merges the records into current and bumps their versions.
+    // Returns the versions they had before, for revert().
+    Map<T, Long> apply(List<T> current, Collection<T> inserts, Collection<T> updates) throws StaleEntityException {
+        Map<String, Integer> positions = positionsOf(current);
+
+        for (T record : inserts) {
+            if (positions.containsKey(keyOf.apply(record))) {
+                throw new StaleEntityException("Record " + keyOf.apply(record) + " already exists");
+            }
+        }
+        for (T record : updates) {
+            Integer pos = positions.get(keyOf.apply(record));
+            if (pos == null) {
+                throw new StaleEntityException("Record " + keyOf.apply(record) + " no longer exists");
+            }
+            long stored = current.get(pos).getVersion();
+            if (stored != record.getVersion()) {
+                throw new StaleEntityException("Record " + keyOf.apply(record) + " is at version "
+                        + stored + ", expected " + record.getVersion());
+            }
+        }
+
+        Map<T, Long> previousVersions = new IdentityHashMap<>();
+        for (T record : updates) {
+            previousVersions.put(record, record.getVersion());
+            record.setVersion(record.getVersion() + 1);
+            current.set(positions.get(keyOf.apply(record)), record);
+        }
+        for (T record : inserts) {
+            previousVersions.put(record, record.getVersion());
+            record.setVersion(1);
+            current.add(record);
+        }
+        return previousVersions;
+    }
+
+    static <T extends Versioned> void revert(Map<T, Long> previousVersions) {
+        previousVersions.forEach(Versioned::setVersion);
+    }
+
+    // Idempotently merges already-versioned images (from a journal) into current.
+    // Returns true if anything changed.
+    boolean replay(List<T> current, Collection<T> images) {
+        Map<String, Integer> positions = positionsOf(current);
+        boolean changed = false;
+        for (T image : images) {
+            Integer pos = positions.get(keyOf.apply(image));
+            if (pos == null) {
+                current.add(image);
+                changed = true;
+            } else if (current.get(pos).getVersion() < image.getVersion()) {
+                current.set(pos, image);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private Map<String, Integer> positionsOf(List<T> records) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            positions.put(keyOf.apply(records.get(i)), i);
+        }
+        return positions;
+    }
+
+    <R> R withCommitLock(Attempt<R> body) throws IOException {
+        ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(lockFile, p -> new ReentrantLock());
+        processLock.lock();
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            return body.run();
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    void write(List<T> records) throws IOException {
+        writeAtomically(objectMapper, file, records);
+    }
+
+    // Writes to a temp file next to target, forces it to disk, renames it over target, then forces
+    // the directory so the rename itself survives a power failure.
+    static void writeAtomically(ObjectMapper objectMapper, Path target, Object value) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), value);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Renames and deletes are directory updates; only forcing the directory makes them durable and
+    // keeps them in order. Windows cannot open a directory as a channel and does not need this.
+    static void syncDirectory(Path dir) throws IOException {
+        if (System.getProperty("os.name", "").startsWith("Windows")) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -1,14 +1,22 @@
-/*
- * This source file was generated by the Gradle 'init' task
- */
 package ticket.booking;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.load.LoadDriver;
+
 import static org.junit.Assert.*;
 
 public class AppTest {
-    @Test public void appHasAGreeting() {
-        App classUnderTest = new App();
-        assertNotNull("app should have a greeting", classUnderTest.getGreeting());
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    // A short, small run of the load driver: concurrent bookings and cancellations must never
+    // oversell a seat, leave a seat without its ticket, or lose a committed booking.
+    @Test
+    public void concurrentBookingKeepsSeatsAndTicketsConsistent() throws Exception {
+        long violations = LoadDriver.smokeTest(tempDir.getRoot(), 8, 3);
+        assertEquals("consistency violations", 0, violations);
     }
 }
@@ -0,0 +1,82 @@
+package ticket.booking.load;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.LocalDb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Cross-checks the seat maps in trains.json against the tickets in users.json.
+ * Only meaningful while no writer is running, since the two files are read one after the other.
+ */
+class ConsistencyChecker {
+
+    static class Result {
+        int trains;
+        int users;
+        int tickets;
+        int bookedSeats;
+        int oversoldSeats;    // one seat held by more than one ticket
+        int orphanSeats;      // seat marked booked but no ticket holds it
+        int ghostTickets;     // ticket whose seat is free or does not exist
+
+        int violations() { return oversoldSeats + orphanSeats + ghostTickets; }
+    }
+
+    static Result check() throws IOException {
+        List<Train> trains = LocalDb.trainStore().load();
+        List<User> users = LocalDb.userStore().load();
+
+        Map<String, Train> trainsById = new HashMap<>();
+        for (Train train : trains) {
+            trainsById.put(train.getTrainId().toLowerCase(Locale.ROOT), train);
+        }
+
+        Result result = new Result();
+        result.trains = trains.size();
+        result.users = users.size();
+
+        Map<String, Integer> holders = new HashMap<>();
+        for (User user : users) {
+            if (user.getTicketsBooked() == null) continue;
+            for (Ticket ticket : user.getTicketsBooked()) {
+                result.tickets++;
+                Train train = ticket.getTrain() == null ? null
+                        : trainsById.get(ticket.getTrain().getTrainId().toLowerCase(Locale.ROOT));
+                if (train == null || !isBooked(train, ticket.getRow(), ticket.getCol())) {
+                    result.ghostTickets++;
+                    continue;
+                }
+                holders.merge(seatKey(train, ticket.getRow(), ticket.getCol()), 1, Integer::sum);
+            }
+        }
+        for (int count : holders.values()) {
+            if (count > 1) result.oversoldSeats++;
+        }
+
+        for (Train train : trains) {
+            List<List<Integer>> seats = train.getSeats();
+            for (int r = 0; r < seats.size(); r++) {
+                for (int c = 0; c < seats.get(r).size(); c++) {
+                    if (seats.get(r).get(c) != 1) continue;
+                    result.bookedSeats++;
+                    if (!holders.containsKey(seatKey(train, r, c))) result.orphanSeats++;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isBooked(Train train, int row, int col) {
+        List<List<Integer>> seats = train.getSeats();
+        return row >= 0 && row < seats.size() && col >= 0 && col < seats.get(row).size()
+                && seats.get(row).get(col) == 1;
+    }
+
+    private static String seatKey(Train train, int row, int col) {
+        return train.getTrainId().toLowerCase(Locale.ROOT) + "/" + row + "/" + col;
+    }
+}
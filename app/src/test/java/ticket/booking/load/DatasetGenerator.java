@@ -0,0 +1,157 @@
+package ticket.booking.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mindrot.jbcrypt.BCrypt;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.LocalDb;
+import ticket.booking.util.TicketHistoryIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a synthetic trains.json / users.json pair: trains running ordered routes over a shared
+ * set of stations, coach-like seat layouts, and users whose ticket histories (past and upcoming)
+ * match the booked seats exactly, so a consistency check on a fresh dataset finds nothing.
+ *
+ * Run with {@code ./gradlew :app:generateDataset --args="--db-dir=/tmp/localDb --trains=200 --users=5000"}.
+ */
+public class DatasetGenerator {
+
+    public static class Options {
+        int trains = 50;
+        int stations = 40;
+        int users = 200;
+        int ticketsPerUser = 5;     // average; actual counts vary between 0 and twice this
+        int bcryptCost = 4;         // cheap hashes keep generation and logins fast
+        long seed = 42;
+    }
+
+    // What the load driver needs to know about a generated dataset.
+    public static class Dataset {
+        final List<String> userNames = new ArrayList<>();
+        final Map<String, String> passwords = new HashMap<>();
+        final List<Train> trains = new ArrayList<>();
+        int tickets;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> parsed = LoadDriver.parseArgs(args);
+        File dir = new File(parsed.getOrDefault("db-dir", LocalDb.DEFAULT_DB_DIR));
+        Dataset dataset = generate(dir, optionsFrom(parsed));
+        System.out.printf("Wrote %d trains, %d users, %d tickets to %s%n",
+                dataset.trains.size(), dataset.userNames.size(), dataset.tickets, dir.getAbsolutePath());
+    }
+
+    static Options optionsFrom(Map<String, String> args) {
+        Options options = new Options();
+        options.trains = Integer.parseInt(args.getOrDefault("trains", String.valueOf(options.trains)));
+        options.stations = Integer.parseInt(args.getOrDefault("stations", String.valueOf(options.stations)));
+        options.users = Integer.parseInt(args.getOrDefault("users", String.valueOf(options.users)));
+        options.ticketsPerUser = Integer.parseInt(args.getOrDefault("tickets-per-user", String.valueOf(options.ticketsPerUser)));
+        options.bcryptCost = Integer.parseInt(args.getOrDefault("bcrypt-cost", String.valueOf(options.bcryptCost)));
+        options.seed = Long.parseLong(args.getOrDefault("seed", String.valueOf(options.seed)));
+        return options;
+    }
+
+    public static Dataset generate(File dir, Options options) throws IOException {
+        if (options.stations < 2) throw new IllegalArgumentException("Need at least 2 stations");
+        Random random = new Random(options.seed);
+        Dataset dataset = new Dataset();
+
+        List<String> stations = new ArrayList<>();
+        for (int i = 1; i <= options.stations; i++) {
+            stations.add(String.format("station%03d", i));
+        }
+        for (int i = 0; i < options.trains; i++) {
+            dataset.trains.add(newTrain(i, stations, random));
+        }
+
+        List<User> users = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < options.users; i++) {
+            String name = String.format("user%06d", i);
+            String password = "password-" + i;
+            User user = new User(name, null, null, new ArrayList<>(), new UUID(random.nextLong(), random.nextLong()).toString());
+
+            int tickets = options.trains == 0 ? 0 : random.nextInt(2 * options.ticketsPerUser + 1);
+            for (int t = 0; t < tickets; t++) {
+                Ticket ticket = bookRandomSeat(user, dataset.trains, now, random);
+                if (ticket != null) {
+                    user.addTicket(ticket);
+                    dataset.tickets++;
+                }
+            }
+            users.add(user);
+            dataset.userNames.add(name);
+            dataset.passwords.put(name, password);
+        }
+
+        // hashing dominates generation time, so spread it over all cores
+        IntStream.range(0, users.size()).parallel().forEach(i -> users.get(i).setHashedPassword(
+                BCrypt.hashpw(dataset.passwords.get(users.get(i).getName()), BCrypt.gensalt(options.bcryptCost))));
+
+        Files.createDirectories(dir.toPath());
+        Files.deleteIfExists(new File(dir, LocalDb.JOURNAL_FILE_NAME).toPath());
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(dir, "trains.json"), dataset.trains);
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(dir, "users.json"), users);
+        return dataset;
+    }
+
+    private static Train newTrain(int index, List<String> allStations, Random random) {
+        // an ordered route over 3..12 distinct stations
+        List<String> shuffled = new ArrayList<>(allStations);
+        Collections.shuffle(shuffled, random);
+        List<String> route = new ArrayList<>(shuffled.subList(0, Math.min(shuffled.size(), 3 + random.nextInt(10))));
+
+        Map<String, String> stationTimes = new LinkedHashMap<>();
+        LocalTime time = LocalTime.of(random.nextInt(24), random.nextInt(4) * 15);
+        for (String station : route) {
+            stationTimes.put(station, time.toString() + ":00");
+            time = time.plusMinutes(30 + random.nextInt(150));
+        }
+
+        // coaches of 4, 5 or 6 seats per row; short regional trains up to long-distance ones
+        int rows = 8 + random.nextInt(33);
+        int cols = 4 + random.nextInt(3);
+        List<List<Integer>> seats = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            seats.add(new ArrayList<>(Collections.nCopies(cols, 0)));
+        }
+
+        return new Train("T" + (10000 + index), 10000 + index, seats, stationTimes, route);
+    }
+
+    private static Ticket bookRandomSeat(User user, List<Train> trains, LocalDateTime now, Random random) {
+        Train train = trains.get(random.nextInt(trains.size()));
+        List<List<Integer>> seats = train.getSeats();
+        for (int attempt = 0; attempt < 20; attempt++) {
+            int row = random.nextInt(seats.size());
+            int col = random.nextInt(seats.get(row).size());
+            if (seats.get(row).get(col) == 0) {
+                seats.get(row).set(col, 1);
+                // travel dates spread over the last and the next year
+                LocalDateTime travel = now.plusMinutes(random.nextInt(2 * 525_600) - 525_600L);
+                List<String> route = train.getStations();
+                return new Ticket(
+                        new UUID(random.nextLong(), random.nextLong()).toString(),
+                        user.getUserId(),
+                        route.get(0),
+                        route.get(route.size() - 1),
+                        travel.format(TicketHistoryIndex.TRAVEL_DATE_FORMAT),
+                        train,
+                        row,
+                        col);
+            }
+        }
+        return null; // train (nearly) full
+    }
+}
@@ -0,0 +1,425 @@
+package ticket.booking.load;
+
+import ticket.booking.entities.BookingHistoryPage;
+import ticket.booking.entities.BookingHistoryQuery;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.services.UserBookingService;
+import ticket.booking.util.LocalDb;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load and soak driver. Each worker thread acts as one client at a time and issues
+ * a weighted mix of search, book, cancel and login calls back to back through
+ * {@link UserBookingService} (which drives TrainService), against a generated dataset. A login
+ * switches the worker to another of its users; only the current session is kept, so the
+ * harness holds one service (and its user list) per worker however long it runs.
+ *
+ * At the end it reports per-operation throughput and p50/p99/p999 latency, seat/ticket
+ * consistency violations, lost bookings, and heap usage after GC sampled over the run.
+ *
+ * Run with {@code ./gradlew :app:loadTest --args="--threads=16 --duration=600 --report-every=30"}.
+ * Dataset options are those of {@link DatasetGenerator}; {@code --db-dir} defaults to a temp directory.
+ */
+public class LoadDriver {
+
+    enum Op { SEARCH, BOOK, CANCEL, LOGIN }
+
+    static class Options {
+        int threads = 2 * Runtime.getRuntime().availableProcessors();
+        long durationSeconds = 30;
+        long warmupSeconds = 5;
+        long reportEverySeconds = 10;
+        long thinkMillis = 0;
+        int[] mix = {50, 20, 10, 20}; // weights in Op order
+        File dbDir;
+        boolean generate = true;
+        boolean quiet = true;         // swallow the services' per-call console output
+        DatasetGenerator.Options dataset = new DatasetGenerator.Options();
+    }
+
+    static class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder rejected = new LongAdder();   // completed but said no: seat taken, nothing to cancel...
+        final LongAdder errors = new LongAdder();     // threw
+    }
+
+    static class Report {
+        final Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+        long measuredNanos;
+        ConsistencyChecker.Result consistency;
+        int initialTickets;
+        long lostBookings;            // expected ticket count minus actual, should be 0
+        long heapAfterGcStart;
+        long heapAfterGcEnd;
+        long heapAfterGcMax;
+        final List<String> firstErrors = Collections.synchronizedList(new ArrayList<>());
+
+        long violations() { return consistency.violations() + Math.abs(lostBookings); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = optionsFrom(parseArgs(args));
+        Report report = run(options);
+        print(report, System.out);
+        if (report.violations() > 0) System.exit(1);
+    }
+
+    // Small dataset, no warmup: for unit tests. Returns the number of consistency violations.
+    public static long smokeTest(File dbDir, int threads, long seconds) throws Exception {
+        Options options = new Options();
+        options.dbDir = dbDir;
+        options.threads = threads;
+        options.durationSeconds = seconds;
+        options.warmupSeconds = 0;
+        options.reportEverySeconds = seconds;
+        options.mix = new int[]{20, 40, 30, 10};
+        options.dataset.trains = 5;
+        options.dataset.stations = 8;
+        options.dataset.users = 20;
+        options.dataset.ticketsPerUser = 3;
+
+        Report report = run(options);
+        print(report, System.out);
+        return report.violations();
+    }
+
+    /* ---------- options ---------- */
+
+    // "--key=value" pairs; a bare "--flag" means "true"
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> parsed = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            int eq = arg.indexOf('=');
+            if (eq < 0) parsed.put(arg.substring(2), "true");
+            else parsed.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return parsed;
+    }
+
+    static Options optionsFrom(Map<String, String> args) throws IOException {
+        Options options = new Options();
+        options.threads = Integer.parseInt(args.getOrDefault("threads", String.valueOf(options.threads)));
+        options.durationSeconds = Long.parseLong(args.getOrDefault("duration", String.valueOf(options.durationSeconds)));
+        options.warmupSeconds = Long.parseLong(args.getOrDefault("warmup", String.valueOf(options.warmupSeconds)));
+        options.reportEverySeconds = Long.parseLong(args.getOrDefault("report-every", String.valueOf(options.reportEverySeconds)));
+        options.thinkMillis = Long.parseLong(args.getOrDefault("think-ms", String.valueOf(options.thinkMillis)));
+        if (args.containsKey("mix")) {
+            // search,book,cancel,login weights, e.g. --mix=60,20,10,10
+            String[] weights = args.get("mix").split(",");
+            if (weights.length != Op.values().length) throw new IllegalArgumentException("--mix needs 4 weights");
+            for (int i = 0; i < weights.length; i++) options.mix[i] = Integer.parseInt(weights[i].trim());
+        }
+        options.dbDir = args.containsKey("db-dir")
+                ? new File(args.get("db-dir"))
+                : Files.createTempDirectory("ticket-booking-load").toFile();
+        options.generate = Boolean.parseBoolean(args.getOrDefault("generate", "true"));
+        options.quiet = !Boolean.parseBoolean(args.getOrDefault("verbose", "false"));
+        options.dataset = DatasetGenerator.optionsFrom(args);
+        return options;
+    }
+
+    /* ---------- run ---------- */
+
+    static Report run(Options options) throws Exception {
+        String previousDir = System.getProperty(LocalDb.DB_DIR_PROPERTY);
+        int previousCost = UserServiceUtil.getBcryptCost();
+        PrintStream previousOut = System.out;
+        System.setProperty(LocalDb.DB_DIR_PROPERTY, options.dbDir.getPath());
+        // hashes are generated at this cost; keeping it avoids upgrading every user on first login
+        UserServiceUtil.setBcryptCost(options.dataset.bcryptCost);
+        try {
+            return runAgainstCurrentDb(options, previousOut);
+        } finally {
+            System.setOut(previousOut);
+            UserServiceUtil.setBcryptCost(previousCost);
+            if (previousDir == null) System.clearProperty(LocalDb.DB_DIR_PROPERTY);
+            else System.setProperty(LocalDb.DB_DIR_PROPERTY, previousDir);
+        }
+    }
+
+    private static Report runAgainstCurrentDb(Options options, PrintStream console) throws Exception {
+        DatasetGenerator.Dataset dataset = options.generate
+                ? DatasetGenerator.generate(options.dbDir, options.dataset)
+                : describeExisting(options);
+        if (dataset.userNames.isEmpty() || dataset.trains.isEmpty()) {
+            throw new IllegalStateException("Dataset needs at least one user and one train");
+        }
+
+        Report report = new Report();
+        report.initialTickets = ConsistencyChecker.check().tickets;
+        for (Op op : Op.values()) report.stats.put(op, new OpStats());
+        Report warmup = new Report();
+        for (Op op : Op.values()) warmup.stats.put(op, new OpStats());
+
+        if (options.quiet) System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        AtomicBoolean measuring = new AtomicBoolean(options.warmupSeconds == 0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder netBookings = new LongAdder(); // successful books minus successful cancels, warmup included
+        CountDownLatch done = new CountDownLatch(options.threads);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < options.threads; w++) {
+            Worker worker = new Worker(w, options, dataset, running, measuring, report, warmup, netBookings, done);
+            Thread thread = new Thread(worker, "load-worker-" + w);
+            thread.setDaemon(true);
+            workers.add(thread);
+        }
+
+        List<Long> heapSamples = Collections.synchronizedList(new ArrayList<>());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] lastCount = {0};
+        long[] lastTick = {System.nanoTime()};
+        sampler.scheduleAtFixedRate(() -> {
+            long heap = heapAfterLastGc();
+            heapSamples.add(heap);
+            long count = report.stats.values().stream().mapToLong(s -> s.latency.count()).sum()
+                    + warmup.stats.values().stream().mapToLong(s -> s.latency.count()).sum();
+            long now = System.nanoTime();
+            double rate = (count - lastCount[0]) / ((now - lastTick[0]) / 1e9);
+            lastCount[0] = count;
+            lastTick[0] = now;
+            console.printf("[%s] %s ops=%d ops/s=%.1f heapAfterGC=%.1fMB%n",
+                    new Date(), measuring.get() ? "measure" : "warmup", count, rate, heap / 1048576.0);
+        }, 0, Math.max(1, options.reportEverySeconds), TimeUnit.SECONDS);
+
+        workers.forEach(Thread::start);
+        if (options.warmupSeconds > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.warmupSeconds));
+            measuring.set(true);
+        }
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds));
+        running.set(false);
+        done.await();
+        report.measuredNanos = System.nanoTime() - start;
+        sampler.shutdownNow();
+        heapSamples.add(heapAfterLastGc());
+
+        report.consistency = ConsistencyChecker.check();
+        report.lostBookings = report.initialTickets + netBookings.sum() - report.consistency.tickets;
+        report.heapAfterGcStart = heapSamples.get(0);
+        report.heapAfterGcEnd = heapSamples.get(heapSamples.size() - 1);
+        report.heapAfterGcMax = heapSamples.stream().mapToLong(Long::longValue).max().orElse(0);
+        return report;
+    }
+
+    // Reads user names and trains from an existing store; passwords must follow the generator's scheme.
+    private static DatasetGenerator.Dataset describeExisting(Options options) throws IOException {
+        DatasetGenerator.Dataset dataset = new DatasetGenerator.Dataset();
+        dataset.trains.addAll(LocalDb.trainStore().load());
+        List<User> users = LocalDb.userStore().load();
+        for (User user : users) {
+            String name = user.getName();
+            if (!name.startsWith("user")) continue;
+            dataset.userNames.add(name);
+            dataset.passwords.put(name, "password-" + Integer.parseInt(name.substring(4)));
+        }
+        return dataset;
+    }
+
+    // Sum over heap pools of the usage right after the last collection; no forced GC.
+    private static long heapAfterLastGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            used += afterGc != null ? afterGc.getUsed() : pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    /* ---------- workers ---------- */
+
+    private static class Worker implements Runnable {
+        private final Options options;
+        private final DatasetGenerator.Dataset dataset;
+        private final AtomicBoolean running;
+        private final AtomicBoolean measuring;
+        private final Report report;
+        private final Report warmup;
+        private final LongAdder netBookings;
+        private final CountDownLatch done;
+        private final List<String> users = new ArrayList<>();
+        private final int totalWeight;
+        private UserBookingService session; // the client currently logged in on this worker
+
+        Worker(int index, Options options, DatasetGenerator.Dataset dataset, AtomicBoolean running,
+               AtomicBoolean measuring, Report report, Report warmup, LongAdder netBookings, CountDownLatch done) {
+            this.options = options;
+            this.dataset = dataset;
+            this.running = running;
+            this.measuring = measuring;
+            this.report = report;
+            this.warmup = warmup;
+            this.netBookings = netBookings;
+            this.done = done;
+            // each worker owns a disjoint slice of users, so contention comes from shared trains and files
+            for (int i = index; i < dataset.userNames.size(); i += options.threads) {
+                users.add(dataset.userNames.get(i));
+            }
+            if (users.isEmpty()) users.add(dataset.userNames.get(index % dataset.userNames.size()));
+            this.totalWeight = Arrays.stream(options.mix).sum();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running.get()) {
+                    Op op = pickOp();
+                    Report phase = measuring.get() ? report : warmup;
+                    OpStats stats = phase.stats.get(op);
+                    long start = System.nanoTime();
+                    try {
+                        if (execute(op)) stats.succeeded.increment();
+                        else stats.rejected.increment();
+                    } catch (Exception ex) {
+                        stats.errors.increment();
+                        if (phase.firstErrors.size() < 10) phase.firstErrors.add(op + ": " + ex);
+                    }
+                    stats.latency.record(System.nanoTime() - start);
+                    if (options.thinkMillis > 0) Thread.sleep(options.thinkMillis);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private Op pickOp() {
+            int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Op op : Op.values()) {
+                roll -= options.mix[op.ordinal()];
+                if (roll < 0) return op;
+            }
+            return Op.SEARCH;
+        }
+
+        private boolean execute(Op op) throws IOException {
+            switch (op) {
+                case LOGIN:
+                    return login();
+                case SEARCH:
+                    return search(session());
+                case BOOK:
+                    return book(session());
+                case CANCEL:
+                    return cancel(session());
+                default:
+                    throw new IllegalStateException("Unknown op " + op);
+            }
+        }
+
+        private UserBookingService session() throws IOException {
+            if (session == null) login();
+            return session;
+        }
+
+        // Logs in as a random user of this worker's slice, replacing the previous session.
+        private boolean login() throws IOException {
+            String userName = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+            User credentials = new User(userName, dataset.passwords.get(userName), "", new ArrayList<>(), "");
+            session = new UserBookingService(credentials);
+            return session.loginUser();
+        }
+
+        private boolean search(UserBookingService service) {
+            Train train = randomTrain();
+            List<String> route = train.getStations();
+            int from = ThreadLocalRandom.current().nextInt(route.size() - 1);
+            int to = from + 1 + ThreadLocalRandom.current().nextInt(route.size() - from - 1);
+            return !service.getTrains(route.get(from), route.get(to)).isEmpty();
+        }
+
+        private boolean book(UserBookingService service) {
+            Train train = randomTrain();
+            List<List<Integer>> seats = service.fetchSeats(train);
+            List<int[]> free = new ArrayList<>();
+            for (int r = 0; r < seats.size(); r++) {
+                for (int c = 0; c < seats.get(r).size(); c++) {
+                    if (seats.get(r).get(c) == 0) free.add(new int[]{r, c});
+                }
+            }
+            if (free.isEmpty()) return false;
+            int[] seat = free.get(ThreadLocalRandom.current().nextInt(free.size()));
+            boolean booked = service.bookTrainSeat(train, seat[0], seat[1]);
+            if (booked) netBookings.increment();
+            return booked;
+        }
+
+        private boolean cancel(UserBookingService service) {
+            BookingHistoryPage page = service.fetchBookings(new BookingHistoryQuery(20));
+            if (page.getTickets().isEmpty()) return false;
+            Ticket ticket = page.getTickets().get(ThreadLocalRandom.current().nextInt(page.getTickets().size()));
+            boolean cancelled = service.cancelBooking(ticket.getTicketId());
+            if (cancelled) netBookings.decrement();
+            return cancelled;
+        }
+
+        private Train randomTrain() {
+            return dataset.trains.get(ThreadLocalRandom.current().nextInt(dataset.trains.size()));
+        }
+    }
+
+    /* ---------- report ---------- */
+
+    static void print(Report report, PrintStream out) {
+        double seconds = report.measuredNanos / 1e9;
+        out.printf("%n%-8s %10s %10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "op", "calls", "ok", "rejected", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        long total = 0;
+        for (Map.Entry<Op, OpStats> entry : report.stats.entrySet()) {
+            OpStats s = entry.getValue();
+            LatencyHistogram h = s.latency;
+            total += h.count();
+            out.printf("%-8s %10d %10d %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    entry.getKey(), h.count(), s.succeeded.sum(), s.rejected.sum(), s.errors.sum(),
+                    h.count() / seconds, ms(h.percentile(50)), ms(h.percentile(99)), ms(h.percentile(99.9)), ms(h.max()));
+        }
+        out.printf("total throughput: %.1f ops/s over %.1fs%n", total / seconds, seconds);
+
+        ConsistencyChecker.Result c = report.consistency;
+        out.printf("dataset: %d trains, %d users, %d tickets (%d at start), %d booked seats%n",
+                c.trains, c.users, c.tickets, report.initialTickets, c.bookedSeats);
+        out.printf("consistency: oversold=%d orphanSeats=%d ghostTickets=%d lostBookings=%d%n",
+                c.oversoldSeats, c.orphanSeats, c.ghostTickets, report.lostBookings);
+        out.printf("heap after GC: start=%.1fMB end=%.1fMB max=%.1fMB growth=%.1fMB%n",
+                report.heapAfterGcStart / 1048576.0, report.heapAfterGcEnd / 1048576.0,
+                report.heapAfterGcMax / 1048576.0, (report.heapAfterGcEnd - report.heapAfterGcStart) / 1048576.0);
+        if (!report.firstErrors.isEmpty()) {
+            out.println("first errors:");
+            report.firstErrors.forEach(e -> out.println("  " + e));
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,208 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mindrot.jbcrypt.BCrypt;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.LocalDb;
+import ticket.booking.util.TransactionJournal;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserBookingServiceTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Before
+    public void pointDbAtTempDir() {
+        System.setProperty(LocalDb.DB_DIR_PROPERTY, tempDir.getRoot().getAbsolutePath());
+        UserServiceUtil.setBcryptCost(4);
+    }
+
+    @After
+    public void restoreDbDir() {
+        System.clearProperty(LocalDb.DB_DIR_PROPERTY);
+        UserServiceUtil.setBcryptCost(UserServiceUtil.DEFAULT_BCRYPT_COST);
+    }
+
+    private static User newUser(String name) {
+        return new User(name, null, "hash", new ArrayList<>(), name + "-id");
+    }
+
+    // signs a user up with a password hashed at the given cost
+    private static void signUpWithCost(String name, String password, int cost) throws IOException {
+        User user = new User(name, password, BCrypt.hashpw(password, BCrypt.gensalt(cost)), new ArrayList<>(), name + "-id");
+        assertTrue(new UserBookingService().signUp(user));
+    }
+
+    private static String storedHash(String name) throws IOException {
+        return LocalDb.userStore().load().stream()
+                .filter(u -> u.getName().equals(name))
+                .findFirst()
+                .orElseThrow()
+                .getHashedPassword();
+    }
+
+    @Test
+    public void loginUpgradesAHashWithAnOutdatedCost() throws IOException {
+        signUpWithCost("alice", "secret", 5);
+
+        assertTrue(new UserBookingService(new User("alice", "secret")).loginUser());
+
+        assertEquals(4, UserServiceUtil.costOf(storedHash("alice")));
+        assertTrue(new UserBookingService(new User("alice", "secret")).loginUser());
+    }
+
+    @Test
+    public void asyncLoginUpgradesAHashWithAnOutdatedCost() throws IOException {
+        signUpWithCost("alice", "secret", 5);
+
+        assertTrue(new UserBookingService(new User("alice", "secret")).loginUserAsync().join());
+
+        // the returned future completes only after the upgraded hash is stored
+        assertEquals(4, UserServiceUtil.costOf(storedHash("alice")));
+        assertTrue(UserServiceUtil.checkPassword("secret", storedHash("alice")));
+    }
+
+    @Test
+    public void wrongPasswordNeitherLogsInNorUpgrades() throws IOException {
+        signUpWithCost("alice", "secret", 5);
+        String before = storedHash("alice");
+
+        assertFalse(new UserBookingService(new User("alice", "wrong")).loginUser());
+        assertFalse(new UserBookingService(new User("alice", "wrong")).loginUserAsync().join());
+        assertFalse(new UserBookingService(new User("nobody", "secret")).loginUser());
+
+        assertEquals(before, storedHash("alice"));
+    }
+
+    @Test
+    public void sessionStateTellsNotLoggedInFromWrongPassword() throws IOException {
+        signUpWithCost("alice", "secret", 4);
+        assertFalse(new UserBookingService().hasSession());
+
+        UserBookingService wrong = new UserBookingService(new User("alice", "wrong"));
+        assertFalse(wrong.loginUser());
+        assertTrue(wrong.hasSession());
+        assertFalse(wrong.isAuthenticated());
+
+        UserBookingService right = new UserBookingService(new User("alice", "secret"));
+        assertTrue(right.loginUser());
+        assertTrue(right.isAuthenticated());
+    }
+
+    @Test
+    public void signUpFinishesAPendingJournalInsteadOfReportingADuplicate() throws IOException {
+        UserBookingService service = new UserBookingService();
+        assertTrue(service.signUp(newUser("alice")));
+
+        // a booking crashed after its journal was written: alice's next version is still pending
+        User journaled = LocalDb.userStore().load().get(0);
+        journaled.setUserId("alice-journaled");
+        journaled.setVersion(2);
+        new ObjectMapper().writeValue(LocalDb.journalFile(),
+                new TransactionJournal.Entry(new ArrayList<>(), List.of(journaled)));
+
+        assertTrue(service.signUp(newUser("bob")));
+
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+        List<User> users = LocalDb.userStore().load();
+        assertEquals(2, users.size());
+        assertEquals("alice-journaled", users.get(0).getUserId());
+    }
+
+    @Test
+    public void signUpRejectsATakenName() throws IOException {
+        // loaded before alice exists, so its in-memory check passes and only the insert conflict catches her
+        UserBookingService stale = new UserBookingService();
+        assertTrue(new UserBookingService().signUp(newUser("alice")));
+        assertFalse(stale.signUp(newUser("alice")));
+        assertEquals(1, LocalDb.userStore().load().size());
+    }
+
+    /* ---------- multi-seat bookings ---------- */
+
+    private static Train trainWithSeats(String trainId, int... seats) {
+        List<Integer> row = new ArrayList<>();
+        for (int seat : seats) row.add(seat);
+        List<List<Integer>> rows = new ArrayList<>();
+        rows.add(row);
+        return new Train(trainId, 1, rows, new HashMap<>(), List.of("a", "b"));
+    }
+
+    private static Train storedTrain(String trainId) throws IOException {
+        return LocalDb.trainStore().load().stream()
+                .filter(t -> t.getTrainId().equals(trainId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static User storedUser(String name) throws IOException {
+        return LocalDb.userStore().load().stream()
+                .filter(u -> u.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private UserBookingService loggedIn(String name) throws IOException {
+        signUpWithCost(name, "secret", 4);
+        UserBookingService service = new UserBookingService(new User(name, "secret"));
+        assertTrue(service.loginUser());
+        return service;
+    }
+
+    @Test
+    public void bookingSeatsOnTwoTrainsBooksBothOrNothing() throws IOException {
+        LocalDb.trainStore().commit(List.of(trainWithSeats("T1", 0, 0), trainWithSeats("T2", 0, 1)), List.of());
+        UserBookingService service = loggedIn("alice");
+
+        // the second claim targets a seat that is already taken
+        List<Ticket> booked = service.bookTrainSeats(new BookingTransaction()
+                .claimSeat("T1", 0, 0)
+                .claimSeat("T2", 0, 1));
+
+        assertTrue(booked.isEmpty());
+        assertEquals(List.of(0, 0), storedTrain("T1").getSeats().get(0));
+        assertEquals(1, storedTrain("T1").getVersion());
+        assertEquals(List.of(0, 1), storedTrain("T2").getSeats().get(0));
+        assertEquals(1, storedTrain("T2").getVersion());
+        assertTrue(storedUser("alice").getTicketsBooked().isEmpty());
+        assertEquals(1, storedUser("alice").getVersion());
+    }
+
+    @Test
+    public void bookingSeatsOnTwoTrainsCreatesOneTicketEach() throws IOException {
+        LocalDb.trainStore().commit(List.of(trainWithSeats("T1", 0, 0), trainWithSeats("T2", 0, 1)), List.of());
+        UserBookingService service = loggedIn("alice");
+
+        List<Ticket> booked = service.bookTrainSeats(new BookingTransaction()
+                .claimSeat("T1", 0, 1)
+                .claimSeat("T2", 0, 0));
+
+        assertEquals(2, booked.size());
+        assertEquals(List.of(0, 1), storedTrain("T1").getSeats().get(0));
+        assertEquals(List.of(1, 1), storedTrain("T2").getSeats().get(0));
+        List<Ticket> stored = storedUser("alice").getTicketsBooked();
+        assertEquals(2, stored.size());
+        assertEquals(booked.get(0).getTicketId(), stored.get(0).getTicketId());
+        assertEquals("T1", stored.get(0).getTrain().getTrainId());
+        assertEquals(1, stored.get(0).getCol());
+        assertEquals(booked.get(1).getTicketId(), stored.get(1).getTicketId());
+        assertEquals("T2", stored.get(1).getTrain().getTrainId());
+        assertEquals(0, stored.get(1).getCol());
+    }
+}
@@ -0,0 +1,90 @@
+package ticket.booking.util;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures BCrypt verification throughput per core for a range of work factors.
+ *
+ * Run with {@code ./gradlew :app:passwordBenchmark --args="8 14 5"}
+ * (min cost, max cost, seconds per measurement).
+ */
+public class PasswordHashBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    public static void main(String[] args) throws Exception {
+        int minCost = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxCost = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int poolThreads = UserServiceUtil.getHashThreads();
+        // the pool cannot keep more cores busy than it has threads (set with -Dticket.booking.bcrypt.threads)
+        int poolCores = Math.min(cores, poolThreads);
+
+        System.out.printf("cores=%d, pool threads=%d, %ds per measurement%n", cores, poolThreads, seconds);
+        System.out.printf("%-6s %14s %14s %14s %12s%n",
+                "cost", "1 thread/s", "pool/s", "pool/s/core", "p50 ms");
+
+        for (int cost = minCost; cost <= maxCost; cost++) {
+            String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+
+            // warm up the JIT before measuring
+            runSingleThreaded(hash, Math.max(1, seconds / 5));
+
+            long[] single = runSingleThreaded(hash, seconds);
+            double singleOps = single.length / (double) seconds;
+            double poolOps = runOnHashPool(hash, seconds, poolThreads) / (double) seconds;
+
+            System.out.printf("%-6d %14.1f %14.1f %14.1f %12.2f%n",
+                    cost, singleOps, poolOps, poolOps / poolCores, median(single) / 1_000_000.0);
+        }
+    }
+
+    // Returns per-call latencies in nanos, verifying on the calling thread.
+    private static long[] runSingleThreaded(String hash, long seconds) {
+        List<Long> samples = new ArrayList<>();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            if (!BCrypt.checkpw(PASSWORD, hash)) throw new IllegalStateException("verification failed");
+            samples.add(System.nanoTime() - start);
+        }
+        return samples.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Keeps the hashing pool saturated through the async API and counts completed verifications.
+    private static long runOnHashPool(String hash, long seconds, int inFlight) throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < inFlight; i++) {
+            Thread client = new Thread(() -> {
+                while (running.get()) {
+                    if (!UserServiceUtil.checkPasswordAsync(PASSWORD, hash).join()) {
+                        throw new IllegalStateException("verification failed");
+                    }
+                    completed.increment();
+                }
+            });
+            client.start();
+            clients.add(client);
+        }
+        Thread.sleep(seconds * 1000);
+        running.set(false);
+        for (Thread client : clients) client.join();
+        return completed.sum();
+    }
+
+    private static long median(long[] samples) {
+        if (samples.length == 0) return 0;
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,144 @@
+package ticket.booking.util;
+
+import org.junit.Test;
+import ticket.booking.entities.BookingHistoryPage;
+import ticket.booking.entities.BookingHistoryQuery;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TicketHistoryIndexTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 15, 12, 0);
+
+    private final Train express = new Train("EXP1", 1, new ArrayList<>(), null, List.of("a", "b"));
+    private final Train local = new Train("LOC2", 2, new ArrayList<>(), null, List.of("a", "b"));
+
+    private static Ticket ticket(String id, String dateOfTravel, Train train) {
+        return new Ticket(id, "u1", "a", "b", dateOfTravel, train, 0, 0);
+    }
+
+    // t1..t6 on consecutive days, alternating trains
+    private TicketHistoryIndex sampleIndex() {
+        List<Ticket> tickets = new ArrayList<>();
+        for (int day = 1; day <= 6; day++) {
+            tickets.add(ticket("t" + day, "2024-06-0" + day + " 09:00:00", day % 2 == 1 ? express : local));
+        }
+        return new TicketHistoryIndex(tickets);
+    }
+
+    private static List<String> ids(BookingHistoryPage page) {
+        return page.getTickets().stream().map(Ticket::getTicketId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void toBoundIsExclusive() {
+        BookingHistoryQuery query = new BookingHistoryQuery(10);
+        query.setFrom(LocalDateTime.of(2024, 6, 2, 9, 0));
+        query.setTo(LocalDateTime.of(2024, 6, 4, 9, 0));
+
+        // a ticket exactly on "from" is included, one exactly on "to" is not
+        assertEquals(List.of("t2", "t3"), ids(sampleIndex().page(query, NOW)));
+    }
+
+    @Test
+    public void cursorWalksOldestFirstWithoutGapsOrRepeats() {
+        TicketHistoryIndex index = sampleIndex();
+        BookingHistoryQuery query = new BookingHistoryQuery(4);
+
+        BookingHistoryPage first = index.page(query, NOW);
+        assertEquals(List.of("t1", "t2", "t3", "t4"), ids(first));
+        assertTrue(first.hasMore());
+
+        query.setCursor(first.getNextCursor());
+        BookingHistoryPage second = index.page(query, NOW);
+        assertEquals(List.of("t5", "t6"), ids(second));
+        assertFalse(second.hasMore());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void cursorWalksNewestFirstWithoutGapsOrRepeats() {
+        TicketHistoryIndex index = sampleIndex();
+        BookingHistoryQuery query = new BookingHistoryQuery(4);
+        query.setNewestFirst(true);
+
+        BookingHistoryPage first = index.page(query, NOW);
+        assertEquals(List.of("t6", "t5", "t4", "t3"), ids(first));
+
+        query.setCursor(first.getNextCursor());
+        BookingHistoryPage second = index.page(query, NOW);
+        assertEquals(List.of("t2", "t1"), ids(second));
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    public void cursorStaysInsideTheDateRange() {
+        TicketHistoryIndex index = sampleIndex();
+        BookingHistoryQuery query = new BookingHistoryQuery(2);
+        query.setFrom(LocalDateTime.of(2024, 6, 2, 0, 0));
+        query.setTo(LocalDateTime.of(2024, 6, 6, 0, 0));
+        query.setNewestFirst(true);
+
+        BookingHistoryPage first = index.page(query, NOW);
+        assertEquals(List.of("t5", "t4"), ids(first));
+        query.setCursor(first.getNextCursor());
+        BookingHistoryPage second = index.page(query, NOW);
+        assertEquals(List.of("t3", "t2"), ids(second));
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    public void trainFilterIsCaseInsensitiveAndPagesWithinTheTrain() {
+        TicketHistoryIndex index = sampleIndex();
+        BookingHistoryQuery query = new BookingHistoryQuery(2);
+        query.setTrainId("exp1");
+
+        BookingHistoryPage first = index.page(query, NOW);
+        assertEquals(List.of("t1", "t3"), ids(first));
+        query.setCursor(first.getNextCursor());
+        assertEquals(List.of("t5"), ids(index.page(query, NOW)));
+
+        query.setCursor(null);
+        query.setTrainId("unknown");
+        assertTrue(index.page(query, NOW).getTickets().isEmpty());
+    }
+
+    @Test
+    public void removedTicketsDropOutOfEveryView() {
+        TicketHistoryIndex index = sampleIndex();
+        index.remove(ticket("t3", "2024-06-03 09:00:00", express));
+
+        BookingHistoryQuery query = new BookingHistoryQuery(10);
+        query.setTrainId("EXP1");
+        assertEquals(List.of("t1", "t5"), ids(index.page(query, NOW)));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void upcomingAndPastSplitAtNow() {
+        TicketHistoryIndex index = sampleIndex();
+        LocalDateTime now = LocalDateTime.of(2024, 6, 4, 9, 0);
+
+        BookingHistoryQuery upcoming = new BookingHistoryQuery(10);
+        upcoming.setWhen(BookingHistoryQuery.When.UPCOMING);
+        assertEquals(List.of("t4", "t5", "t6"), ids(index.page(upcoming, now)));
+
+        BookingHistoryQuery past = new BookingHistoryQuery(10);
+        past.setWhen(BookingHistoryQuery.When.PAST);
+        assertEquals(List.of("t1", "t2", "t3"), ids(index.page(past, now)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCursorIsRejected() {
+        BookingHistoryQuery query = new BookingHistoryQuery(10);
+        query.setCursor("%%%");
+        sampleIndex().page(query, NOW);
+    }
+}
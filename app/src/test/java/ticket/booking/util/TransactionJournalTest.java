@@ -0,0 +1,141 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static ticket.booking.util.VersionedJsonStoreTest.train;
+
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private VersionedJsonStore<Train> trainStore;
+    private VersionedJsonStore<User> userStore;
+
+    @Before
+    public void seedStoreInTempDir() throws IOException {
+        System.setProperty(LocalDb.DB_DIR_PROPERTY, tempDir.getRoot().getAbsolutePath());
+        trainStore = LocalDb.trainStore();
+        userStore = LocalDb.userStore();
+        trainStore.commit(List.of(train("T1"), train("T2")), List.of());
+        userStore.commit(List.of(new User("alice", null, "hash", new ArrayList<>(), "u1")), List.of());
+    }
+
+    @After
+    public void restoreDbDir() {
+        System.clearProperty(LocalDb.DB_DIR_PROPERTY);
+    }
+
+    private Train storedTrain(String trainId) throws IOException {
+        return trainStore.load().stream().filter(t -> t.getTrainId().equals(trainId)).findFirst().orElse(null);
+    }
+
+    private User storedUser(String name) throws IOException {
+        return userStore.load().stream().filter(u -> u.getName().equals(name)).findFirst().orElse(null);
+    }
+
+    @Test
+    public void commitWritesBothStoresAndDeletesTheJournal() throws IOException {
+        Train train = storedTrain("T1");
+        User user = storedUser("alice");
+        train.getSeats().get(0).set(0, 1);
+        user.setUserId("u1-renamed");
+
+        new TransactionJournal().commit(List.of(train), List.of(user));
+
+        assertEquals(2, storedTrain("T1").getVersion());
+        assertEquals(Integer.valueOf(1), storedTrain("T1").getSeats().get(0).get(0));
+        assertEquals(2, storedUser("alice").getVersion());
+        assertEquals("u1-renamed", storedUser("alice").getUserId());
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+    }
+
+    @Test
+    public void staleUserRollsBackTheTrainVersionsOfTheSameCommit() throws IOException {
+        User winner = storedUser("alice");
+        User loser = storedUser("alice");
+        userStore.commit(List.of(), List.of(winner));
+
+        Train first = storedTrain("T1");
+        Train second = storedTrain("T2");
+        first.getSeats().get(0).set(0, 1);
+        second.getSeats().get(0).set(0, 1);
+
+        assertThrows(StaleEntityException.class,
+                () -> new TransactionJournal().commit(List.of(first, second), List.of(loser)));
+
+        // the trains were validated and bumped before the user check failed; both bumps are undone
+        assertEquals(1, first.getVersion());
+        assertEquals(1, second.getVersion());
+        assertEquals(1, loser.getVersion());
+        assertEquals(1, storedTrain("T1").getVersion());
+        assertEquals(Integer.valueOf(0), storedTrain("T1").getSeats().get(0).get(0));
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+    }
+
+    @Test
+    public void leftoverJournalIsRolledForwardOnceAndOnlyOnce() throws IOException {
+        // the images a crashed commit wrote to its journal before touching either store
+        Train train = storedTrain("T1");
+        User user = storedUser("alice");
+        train.getSeats().get(0).set(1, 1);
+        train.setVersion(2);
+        user.setUserId("u1-journaled");
+        user.setVersion(2);
+        TransactionJournal.Entry entry = new TransactionJournal.Entry(List.of(train), List.of(user));
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writeValue(LocalDb.journalFile(), entry);
+
+        TransactionJournal.recoverIfPending();
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+        assertEquals(2, storedTrain("T1").getVersion());
+        assertEquals(Integer.valueOf(1), storedTrain("T1").getSeats().get(0).get(1));
+        assertEquals("u1-journaled", storedUser("alice").getUserId());
+
+        // a later commit moves alice on; replaying the same journal again (a crash before its delete)
+        // must not bring back the older image
+        User later = storedUser("alice");
+        later.setUserId("u1-later");
+        userStore.commit(List.of(), List.of(later));
+        objectMapper.writeValue(LocalDb.journalFile(), entry);
+
+        TransactionJournal.recoverIfPending();
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+        assertEquals(3, storedUser("alice").getVersion());
+        assertEquals("u1-later", storedUser("alice").getUserId());
+        assertEquals(2, storedTrain("T1").getVersion());
+        assertEquals(1, storedTrain("T2").getVersion());
+    }
+
+    @Test
+    public void commitFinishesAPendingJournalFirst() throws IOException {
+        Train journaled = storedTrain("T2");
+        journaled.getSeats().get(0).set(0, 1);
+        journaled.setVersion(2);
+        new ObjectMapper().writeValue(LocalDb.journalFile(),
+                new TransactionJournal.Entry(List.of(journaled), List.of()));
+
+        User user = storedUser("alice");
+        Train train = storedTrain("T1");
+        train.getSeats().get(0).set(0, 1);
+        new TransactionJournal().commit(List.of(train), List.of(user));
+
+        assertEquals(2, storedTrain("T1").getVersion());
+        assertEquals(2, storedTrain("T2").getVersion());
+        assertEquals(Integer.valueOf(1), storedTrain("T2").getSeats().get(0).get(0));
+        assertFalse(Files.exists(LocalDb.journalFile().toPath()));
+    }
+}
@@ -0,0 +1,99 @@
+package ticket.booking.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class UserServiceUtilTest {
+
+    @After
+    public void restoreCost() {
+        UserServiceUtil.setBcryptCost(UserServiceUtil.DEFAULT_BCRYPT_COST);
+    }
+
+    @Test
+    public void costOfReadsTheWorkFactorOfABcryptHash() {
+        assertEquals(5, UserServiceUtil.costOf(BCrypt.hashpw("pw", BCrypt.gensalt(5))));
+        assertEquals(12, UserServiceUtil.costOf("$2a$12$abcdefghijklmnopqrstuvABCDEFGHIJKLMNOPQRSTUVWXYZ01234"));
+    }
+
+    @Test
+    public void costOfIsMinusOneForAnythingElse() {
+        assertEquals(-1, UserServiceUtil.costOf(null));
+        assertEquals(-1, UserServiceUtil.costOf(""));
+        assertEquals(-1, UserServiceUtil.costOf("plaintext"));
+        assertEquals(-1, UserServiceUtil.costOf("$2a$1x$abcdefghijklmnopqrstuv"));
+        assertEquals(-1, UserServiceUtil.costOf("$2a$10"));
+        assertEquals(-1, UserServiceUtil.costOf("$2a$100$abcdefghijklmnopqrstuv"));
+    }
+
+    @Test
+    public void needsRehashWhenTheCostDiffersFromTheConfiguredOne() {
+        UserServiceUtil.setBcryptCost(4);
+        assertFalse(UserServiceUtil.needsRehash(BCrypt.hashpw("pw", BCrypt.gensalt(4))));
+        assertTrue(UserServiceUtil.needsRehash(BCrypt.hashpw("pw", BCrypt.gensalt(5))));
+        assertTrue(UserServiceUtil.needsRehash("not a hash"));
+
+        assertEquals(4, UserServiceUtil.costOf(UserServiceUtil.hashPassword("pw")));
+    }
+
+    @Test
+    public void costOutsideWhatJbcryptAcceptsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserServiceUtil.setBcryptCost(3));
+        assertThrows(IllegalArgumentException.class, () -> UserServiceUtil.setBcryptCost(31));
+        UserServiceUtil.setBcryptCost(30);
+        assertEquals(30, UserServiceUtil.getBcryptCost());
+    }
+
+    @Test
+    public void checkPasswordRejectsWrongAndMalformedHashes() {
+        UserServiceUtil.setBcryptCost(4);
+        String hash = UserServiceUtil.hashPassword("pw");
+        assertTrue(UserServiceUtil.checkPassword("pw", hash));
+        assertFalse(UserServiceUtil.checkPassword("other", hash));
+        assertFalse(UserServiceUtil.checkPassword("pw", ""));
+        assertFalse(UserServiceUtil.checkPassword("pw", "garbage"));
+    }
+
+    @Test
+    public void asyncApiFailsFastOnceEveryPermitIsTaken() {
+        UserServiceUtil.setBcryptCost(4);
+        int permits = UserServiceUtil.availableHashPermits();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> held = new ArrayList<>();
+        try {
+            // occupy every thread and queue slot with a task that waits for the latch
+            for (int i = 0; i < permits; i++) {
+                held.add(UserServiceUtil.submit(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                }, 0));
+            }
+            assertEquals(0, UserServiceUtil.availableHashPermits());
+
+            CompletableFuture<String> rejected = UserServiceUtil.hashPasswordAsync("pw");
+            assertTrue("rejected without waiting", rejected.isCompletedExceptionally());
+            assertThrows(HashingOverloadedException.class, () -> UserServiceUtil.join(rejected));
+            assertThrows(HashingOverloadedException.class,
+                    () -> UserServiceUtil.join(UserServiceUtil.checkPasswordAsync("pw", "$2a$04$abcdefghijklmnopqrstuv")));
+        } finally {
+            release.countDown();
+            held.forEach(CompletableFuture::join);
+        }
+
+        // every permit comes back once the work is done
+        assertEquals(permits, UserServiceUtil.availableHashPermits());
+        assertTrue(UserServiceUtil.checkPasswordAsync("pw", UserServiceUtil.hashPassword("pw")).join());
+    }
+}
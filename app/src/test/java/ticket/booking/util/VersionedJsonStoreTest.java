@@ -0,0 +1,195 @@
+package ticket.booking.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Train;
+import ticket.booking.services.TrainService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VersionedJsonStoreTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private VersionedJsonStore<Train> store;
+
+    @Before
+    public void pointDbAtTempDir() {
+        System.setProperty(LocalDb.DB_DIR_PROPERTY, tempDir.getRoot().getAbsolutePath());
+        store = LocalDb.trainStore();
+    }
+
+    @After
+    public void restoreDbDir() {
+        System.clearProperty(LocalDb.DB_DIR_PROPERTY);
+    }
+
+    static Train train(String trainId) {
+        List<List<Integer>> seats = new ArrayList<>();
+        seats.add(new ArrayList<>(List.of(0, 0)));
+        return new Train(trainId, 1, seats, new HashMap<>(), List.of("a", "b"));
+    }
+
+    private Train stored(String trainId) throws IOException {
+        return store.load().stream().filter(t -> t.getTrainId().equals(trainId)).findFirst().orElse(null);
+    }
+
+    @Test
+    public void insertStartsAtVersionOneAndUpdateBumpsIt() throws IOException {
+        store.commit(List.of(train("T1")), List.of());
+        Train copy = stored("T1");
+        assertEquals(1, copy.getVersion());
+
+        copy.getSeats().get(0).set(0, 1);
+        store.commit(List.of(), List.of(copy));
+        assertEquals(2, copy.getVersion());
+        assertEquals(2, stored("T1").getVersion());
+        assertEquals(Integer.valueOf(1), stored("T1").getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void staleUpdateIsRejectedAndLeavesStoreAndVersionsAlone() throws IOException {
+        store.commit(List.of(train("T1"), train("T2")), List.of());
+        Train winner = stored("T1");
+        Train loser = stored("T1");
+        Train untouched = stored("T2");
+
+        winner.getSeats().get(0).set(0, 1);
+        store.commit(List.of(), List.of(winner));
+
+        loser.getSeats().get(0).set(1, 1);
+        assertThrows(StaleEntityException.class, () -> store.commit(List.of(), List.of(untouched, loser)));
+
+        // nothing from the rejected commit was written, and its records keep the versions they were read with
+        assertEquals(1, loser.getVersion());
+        assertEquals(1, untouched.getVersion());
+        assertEquals(2, stored("T1").getVersion());
+        assertEquals(Integer.valueOf(0), stored("T1").getSeats().get(0).get(1));
+        assertEquals(1, stored("T2").getVersion());
+    }
+
+    @Test
+    public void revertRestoresTheVersionsApplyBumped() throws IOException {
+        store.commit(List.of(train("T1")), List.of());
+        List<Train> current = store.read();
+        Train update = stored("T1");
+        Train insert = train("T2");
+        insert.setVersion(7);
+
+        Map<Train, Long> previous = store.apply(current, List.of(insert), List.of(update));
+        assertEquals(2, update.getVersion());
+        assertEquals(1, insert.getVersion());
+
+        VersionedJsonStore.revert(previous);
+        assertEquals(1, update.getVersion());
+        assertEquals(7, insert.getVersion());
+    }
+
+    @Test
+    public void insertWithExistingKeyIsRejected() throws IOException {
+        store.commit(List.of(train("T1")), List.of());
+
+        // train ids are matched case-insensitively
+        assertThrows(StaleEntityException.class, () -> store.commit(List.of(train("t1")), List.of()));
+        assertEquals(1, store.load().size());
+    }
+
+    @Test
+    public void commitsAreRefusedWhileAJournalIsPending() throws IOException {
+        store.commit(List.of(train("T1")), List.of());
+        Files.writeString(LocalDb.journalFile().toPath(), "{\"trains\":[],\"users\":[]}");
+
+        assertThrows(PendingTransactionException.class, () -> store.commit(List.of(train("T2")), List.of()));
+        assertEquals(1, store.load().size());
+    }
+
+    @Test
+    public void addTrainReplacesAnExistingTrain() throws IOException {
+        TrainService trainService = new TrainService();
+        trainService.addTrain(train("T1"));
+
+        Train replacement = train("T1");
+        replacement.getSeats().get(0).set(0, 1);
+        trainService.addTrain(replacement);
+
+        assertEquals(1, store.load().size());
+        assertEquals(2, stored("T1").getVersion());
+        assertEquals(Integer.valueOf(1), stored("T1").getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void commitsFromSeveralProcessesNeitherLoseNorDoubleClaimSeats() throws Exception {
+        int claimsPerProcess = 40;
+        int children = 2;
+        Train shared = train("T1");
+        shared.getSeats().set(0, new ArrayList<>(Collections.nCopies(claimsPerProcess * (children + 1), 0)));
+        store.commit(List.of(shared), List.of());
+
+        // other JVMs only share the FileChannel lock with this one, not the in-process lock
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int owner = 2; owner <= children + 1; owner++) {
+            processes.add(new ProcessBuilder(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    "-D" + LocalDb.DB_DIR_PROPERTY + "=" + tempDir.getRoot().getAbsolutePath(),
+                    SeatClaimer.class.getName(), Integer.toString(owner), Integer.toString(claimsPerProcess))
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(tempDir.getRoot(), "claimer-" + owner + ".log"))
+                    .start());
+        }
+        SeatClaimer.claim(store, 1, claimsPerProcess);
+        for (Process process : processes) {
+            assertTrue("second JVM finished", process.waitFor(120, TimeUnit.SECONDS));
+            assertEquals("second JVM exit code", 0, process.exitValue());
+        }
+
+        List<Integer> seats = stored("T1").getSeats().get(0);
+        for (int owner = 1; owner <= children + 1; owner++) {
+            assertEquals("seats held by process " + owner, claimsPerProcess, Collections.frequency(seats, owner));
+        }
+        assertEquals(1 + claimsPerProcess * (children + 1), stored("T1").getVersion());
+    }
+
+    // Claims seats in train T1 by writing its owner id into free ones, retrying every lost version race.
+    public static class SeatClaimer {
+
+        public static void main(String[] args) throws IOException {
+            claim(LocalDb.trainStore(), Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        }
+
+        static void claim(VersionedJsonStore<Train> store, int owner, int claims) throws IOException {
+            for (int i = 0; i < claims; i++) {
+                while (true) {
+                    try {
+                        VersionedJsonStore.retryOnConflict(() -> {
+                            Train train = store.load().get(0);
+                            List<Integer> row = train.getSeats().get(0);
+                            int free = row.indexOf(0);
+                            if (free < 0) throw new IllegalStateException("no free seat left for " + owner);
+                            row.set(free, owner);
+                            return store.commit(List.of(), List.of(train));
+                        });
+                        break;
+                    } catch (StaleEntityException ex) {
+                        // lost MAX_ATTEMPTS races in a row; keep going, this test is about the outcome
+                    }
+                }
+            }
+        }
+    }
+}